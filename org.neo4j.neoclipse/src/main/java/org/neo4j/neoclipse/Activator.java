@@ -36,6 +36,7 @@ import org.neo4j.neoclipse.connection.AliasManager;
 import org.neo4j.neoclipse.connection.ConnectionsView;
 import org.neo4j.neoclipse.graphdb.GraphDbServiceManager;
 import org.neo4j.neoclipse.graphdb.GraphDbServiceStatus;
+import org.neo4j.neoclipse.view.NeoGraphLabelProviderWrapper;
 import org.neo4j.neoclipse.view.NeoGraphViewPart;
 import org.neo4j.neoclipse.view.UiHelper;
 import org.osgi.framework.BundleContext;
@@ -84,6 +85,7 @@ public class Activator extends AbstractUIPlugin
         graphDbServiceManager.shutdownGraphDbService();
         graphDbServiceManager.stopExecutingTasks();
         aliasManager.saveAliases();
+        NeoGraphLabelProviderWrapper.dispose();
 
         PLUGIN = null;
         super.stop( context );
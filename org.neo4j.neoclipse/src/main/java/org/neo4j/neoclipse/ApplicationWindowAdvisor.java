@@ -35,6 +35,7 @@ import org.eclipse.ui.application.WorkbenchWindowAdvisor;
 import org.eclipse.ui.help.IWorkbenchHelpSystem;
 import org.neo4j.neoclipse.action.Actions;
 import org.neo4j.neoclipse.connection.ConnectionsView;
+import org.neo4j.neoclipse.perf.PerformanceView;
 import org.neo4j.neoclipse.reltype.RelationshipTypeView;
 import org.neo4j.neoclipse.search.NeoSearchPage;
 
@@ -89,6 +90,7 @@ public class ApplicationWindowAdvisor extends WorkbenchWindowAdvisor
         private Action helpWindowAction;
         private Action searchAction;
         private Action connectionsAction;
+        private Action performanceAction;
 
         public ApplicationActionBarAdvisor( IActionBarConfigurer configurer )
         {
@@ -200,6 +202,24 @@ public class ApplicationWindowAdvisor extends WorkbenchWindowAdvisor
                 }
             };
             Actions.CONNECTIONS.initialize( connectionsAction );
+
+            performanceAction = new Action()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        PlatformUI.getWorkbench().getActiveWorkbenchWindow().getActivePage().showView(
+                                PerformanceView.ID );
+                    }
+                    catch ( PartInitException e )
+                    {
+                        e.printStackTrace();
+                    }
+                }
+            };
+            Actions.PERFORMANCE_VIEW.initialize( performanceAction );
         }
 
         @Override
@@ -213,6 +233,7 @@ public class ApplicationWindowAdvisor extends WorkbenchWindowAdvisor
             views.add( propertiesAction );
             views.add( reltypesAction );
             views.add( searchAction );
+            views.add( performanceAction );
             views.add( helpViewAction );
             views.add( helpWindowAction );
             coolBar.add( new ToolBarContributionItem( views, "views" ) );
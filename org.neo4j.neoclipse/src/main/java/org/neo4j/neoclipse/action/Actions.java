@@ -35,6 +35,7 @@ public enum Actions
     HELP_WINDOW( "Help window", Icons.HELP_WINDOW_ENABLED, Icons.HELP_WINDOW_DISABLED ),
     SEARCH( "Search", Icons.SEARCH_ENABLED, Icons.SEARCH_DISABLED ),
     CONNECTIONS( "Database location", Icons.CONNECTIONS_ENABLED, Icons.CONNECTIONS_DISABLED ),
+    PERFORMANCE_VIEW( "Performance view", Icons.ZOOM ),
 
     // connect
     NEW_CONNECTION( "New Connection", Icons.NEW_ALIAS_ENABLED, Icons.NEW_ALIAS_DISABLED ),
@@ -125,7 +126,10 @@ public enum Actions
     NEW_CYPHER_EDITOR( "New Cypher Editor", Icons.CYPHER_EDITOR_ENABLED, Icons.CYPHER_EDITOR_DISABLED ),
     FORCE_START( "Close other connection and start", Icons.FORCE_START_ENABLED, Icons.FORCE_START_DISABLED ),
     EXPORT_XML( "ExportToXml", Icons.XML, Icons.XML ),
-    EXPORT_JSON( "ExportToJson", Icons.JSON, Icons.JSON ), ;
+    EXPORT_JSON( "ExportToJson", Icons.JSON, Icons.JSON ),
+    // performance
+    RESET_STATISTICS( "Reset statistics", Icons.CLEAR_ENABLED, Icons.CLEAR_DISABLED ),
+    EXPORT_STATISTICS( "Export statistics to CSV", Icons.CSV ), ;
 
     private final String label;
     private final String tooltip;
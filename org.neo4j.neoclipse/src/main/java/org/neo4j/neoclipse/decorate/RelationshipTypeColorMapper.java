@@ -70,7 +70,7 @@ public class RelationshipTypeColorMapper
         this.colorCategories = values;
     }
 
-    public Color getColor( final RelationshipType type,
+    public synchronized Color getColor( final RelationshipType type,
             final ColorSetting colorSetting )
     {
         Colors colors = colorMap.get( type );
@@ -82,7 +82,7 @@ public class RelationshipTypeColorMapper
         return colors.getColor( colorSetting );
     }
 
-    public boolean colorExists( final RelationshipType type )
+    public synchronized boolean colorExists( final RelationshipType type )
     {
         return colorMap.containsKey( type );
     }
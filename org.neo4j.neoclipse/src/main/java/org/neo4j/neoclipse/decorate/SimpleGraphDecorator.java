@@ -19,13 +19,16 @@
 package org.neo4j.neoclipse.decorate;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
-import java.util.concurrent.Callable;
 
 import org.eclipse.jface.preference.IPreferenceStore;
 import org.eclipse.swt.graphics.Color;
@@ -33,18 +36,26 @@ import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.RGB;
 import org.eclipse.swt.widgets.Display;
 import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.PropertyContainer;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
 import org.neo4j.neoclipse.Activator;
 import org.neo4j.neoclipse.Icons;
-import org.neo4j.neoclipse.graphdb.GraphDbServiceManager;
+import org.neo4j.neoclipse.event.NeoclipseEvent;
+import org.neo4j.neoclipse.event.NeoclipseEventListener;
+import org.neo4j.neoclipse.graphdb.GraphCallable;
+import org.neo4j.neoclipse.graphdb.GraphCallback;
 import org.neo4j.neoclipse.graphdb.GraphDbUtil;
+import org.neo4j.neoclipse.graphdb.NeighbourhoodSnapshot;
+import org.neo4j.neoclipse.graphdb.NeighbourhoodSnapshot.ColorKey;
+import org.neo4j.neoclipse.graphdb.TaskPriority;
 import org.neo4j.neoclipse.preference.DecoratorPreferences;
 import org.neo4j.neoclipse.property.PropertyTransform;
 import org.neo4j.neoclipse.property.PropertyTransform.PropertyHandler;
 import org.neo4j.neoclipse.view.ErrorMessage;
+import org.neo4j.rest.graphdb.entity.RestNode;
 
 public class SimpleGraphDecorator
 {
@@ -85,6 +96,12 @@ public class SimpleGraphDecorator
      */
     private static final Color HIGHLIGHTED_RELATIONSHIP_COLOR = new Color(
             Display.getDefault(), new RGB( 0, 0, 0 ) );
+    /**
+     * Relationships to look at in each direction when finding the color of a
+     * remote node, so nodes with very many relationships don't get read
+     * through.
+     */
+    private static final int MAX_COLOR_RELATIONSHIPS = 200;
     /**
      * Map colors to relationship types.
      */
@@ -97,6 +114,73 @@ public class SimpleGraphDecorator
      * View settings for this decorator.
      */
     private final ViewSettings viewSettings;
+    /**
+     * Data of the currently shown graph, if any.
+     */
+    private NeighbourhoodSnapshot snapshot = null;
+    /**
+     * Maximum number of node or relationship labels to keep.
+     */
+    private static final int MAX_LABELS = 10000;
+    /**
+     * Rendered node labels by node id, only used from the display thread.
+     */
+    private final LabelCache nodeLabels = new LabelCache();
+    /**
+     * Rendered relationship labels by relationship id.
+     */
+    private final LabelCache relLabels = new LabelCache();
+    /**
+     * The settings the cached labels were rendered with.
+     */
+    private List<Object> labelSettings = null;
+    /**
+     * Color keys of nodes that aren't in the snapshot, by node id, so they
+     * are only looked up once.
+     */
+    private final Map<Long, ColorKey> nodeColorKeys = new HashMap<Long, ColorKey>();
+    /**
+     * Nodes outside the snapshot whose color is being looked up.
+     */
+    private final Set<Long> loadingColors = new HashSet<Long>();
+    /**
+     * Nodes outside the snapshot whose icon is being looked up.
+     */
+    private final Set<Long> loadingIcons = new HashSet<Long>();
+    /**
+     * Told about nodes whose color or icon has been looked up in the
+     * background, so they can be relabeled.
+     */
+    private NeoclipseEventListener loadListener = null;
+    /**
+     * Names of the user icons found for nodes, by node id. A null name means
+     * the node has no user icon.
+     */
+    private final LabelCache nodeIconNames = new LabelCache();
+    /**
+     * Version of the user icons the icon names were found with.
+     */
+    private int iconVersion = -1;
+
+    /**
+     * Labels or icon names by element id, dropping the least recently used
+     * ones.
+     */
+    private static class LabelCache extends LinkedHashMap<Long, String>
+    {
+        private static final long serialVersionUID = 1L;
+
+        LabelCache()
+        {
+            super( 16, 0.75f, true );
+        }
+
+        @Override
+        protected boolean removeEldestEntry( final Map.Entry<Long, String> eldest )
+        {
+            return size() > MAX_LABELS;
+        }
+    }
 
     public static class Settings
     {
@@ -437,7 +521,7 @@ public class SimpleGraphDecorator
     }
 
     public SimpleGraphDecorator( final Settings settings,
-            final ViewSettings viewSettings )
+            final ViewSettings viewSettings, final UserIcons userIcons )
     {
         if ( settings.getDirections() == null )
         {
@@ -451,7 +535,97 @@ public class SimpleGraphDecorator
         this.settings = settings;
         this.viewSettings = viewSettings;
         colorMapper = new RelationshipTypeColorMapper( ColorCategory.values() );
-        userIcons = new UserIcons( settings.getNodeIconLocation() );
+        this.userIcons = userIcons;
+    }
+
+    /**
+     * Set the listener to tell about nodes whose color or icon has been
+     * looked up in the background. The event source is the node.
+     * 
+     * @param listener the listener, or null
+     */
+    public void setLoadListener( final NeoclipseEventListener listener )
+    {
+        loadListener = listener;
+    }
+
+    /**
+     * Set the data to use for the currently shown graph. Elements that are
+     * not in the snapshot are looked up in the database.
+     * 
+     * @param snapshot snapshot of the shown graph, or null
+     */
+    public void setSnapshot( final NeighbourhoodSnapshot snapshot )
+    {
+        this.snapshot = snapshot;
+        clearCaches();
+    }
+
+    /**
+     * Forget all rendered labels, node colors and node icons, for when the
+     * data they were taken from has changed.
+     */
+    public void clearCaches()
+    {
+        clearLabels();
+        nodeColorKeys.clear();
+        nodeIconNames.clear();
+    }
+
+    private void clearLabels()
+    {
+        nodeLabels.clear();
+        relLabels.clear();
+    }
+
+    /**
+     * Forget the rendered label of a node or relationship, and the icon of a
+     * node. The snapshot gets the new properties, or the label would be
+     * rendered from the old ones again.
+     * 
+     * @param container the node or relationship that changed
+     * @param props its current properties
+     */
+    public void clearLabel( final PropertyContainer container,
+            final Map<String, Object> props )
+    {
+        if ( snapshot != null )
+        {
+            snapshot.updateProperties( container, props );
+        }
+        if ( container instanceof Node )
+        {
+            nodeLabels.remove( ( (Node) container ).getId() );
+            nodeIconNames.remove( ( (Node) container ).getId() );
+        }
+        else if ( container instanceof Relationship )
+        {
+            relLabels.remove( ( (Relationship) container ).getId() );
+        }
+    }
+
+    /**
+     * Drop the cached labels when the settings they depend on have changed
+     * since they were rendered.
+     */
+    private void checkLabelSettings()
+    {
+        List<Object> current = Arrays.<Object>asList(
+                viewSettings.isShowNodeNames(),
+                viewSettings.isShowNodePropertyKeys(),
+                viewSettings.isFilterNodeProperties(),
+                viewSettings.isShowNodeIds(),
+                viewSettings.isShowRelationshipTypes(),
+                viewSettings.isShowRelationshipNames(),
+                viewSettings.isShowRelationshipPropertyKeys(),
+                viewSettings.isFilterRelationshipProperties(),
+                viewSettings.isShowRelationshipIds(),
+                settings.getNodePropertyNames(), settings.getRelPropertyNames() );
+        if ( !current.equals( labelSettings ) )
+        {
+            clearLabels();
+            labelSettings = current;
+        }
     }
 
     public Color getNodeColor()
@@ -473,53 +647,174 @@ public class SimpleGraphDecorator
      */
     private Color getNodeColor( final Node node, final boolean marked )
     {
-        GraphDbServiceManager gsm = Activator.getDefault()
-                .getGraphDbServiceManager();
-        try
+        if ( snapshot != null && snapshot.hasColorKey( node ) )
         {
-            return gsm.submitTask( new Callable<Color>()
-            {
-                @Override
-                public Color call() throws Exception
+            return getColorFromKey( snapshot.getColorKey( node ), marked );
+        }
+        if ( nodeColorKeys.containsKey( node.getId() ) )
+        {
+            return getColorFromKey( nodeColorKeys.get( node.getId() ), marked );
+        }
+        loadColorKey( node );
+        return getColorFromKey( null, marked );
+    }
+
+    /**
+     * Look up the color of a node outside the snapshot in the background.
+     * The node is relabeled when it's found.
+     * 
+     * @param node the node
+     */
+    private void loadColorKey( final Node node )
+    {
+        if ( !loadingColors.add( node.getId() ) )
+        {
+            return;
+        }
+        Activator.getDefault().getGraphDbServiceManager().submitReadTask(
+                new GraphCallable<ColorKey>()
                 {
-                    Relationship randomRel = null;
-                    Direction randomDir = null;
-                    for ( Direction direction : settings.getDirections() )
+                    @Override
+                    public ColorKey call( final GraphDatabaseService graphDb )
                     {
-                        for ( Relationship rel : node.getRelationships( direction ) )
-                        {
-                            RelationshipType type = rel.getType();
-                            if ( !colorMapper.colorExists( type ) )
-                            {
-                                if ( randomRel == null )
-                                {
-                                    randomRel = rel;
-                                    randomDir = direction;
-                                }
-                                continue;
-                            }
-                            else
-                            {
-                                return getColorFromDirection( type, direction,
-                                        marked );
-                            }
-                        }
+                        return findColorKey( node );
                     }
-                    if ( randomRel != null )
+                }, new GraphCallback<ColorKey>()
+                {
+                    @Override
+                    public void done( final ColorKey colorKey )
+                    {
+                        loadingColors.remove( node.getId() );
+                        nodeColorKeys.put( node.getId(), colorKey );
+                        loaded( node );
+                    }
+
+                    @Override
+                    public void failed( final Exception exception )
                     {
-                        return getColorFromDirection( randomRel.getType(),
-                                randomDir, marked );
+                        loadingColors.remove( node.getId() );
+                        // keep the default color
+                        nodeColorKeys.put( node.getId(), null );
+                        exception.printStackTrace();
                     }
-                    return getNodeColor();
+                }, TaskPriority.INTERACTIVE, "get node color" );
+    }
+
+    private void loaded( final Node node )
+    {
+        if ( loadListener != null )
+        {
+            loadListener.stateChanged( new NeoclipseEvent( node ) );
+        }
+    }
+
+    /**
+     * Find the relationship type and direction that decides the color of a
+     * node. Relationship types that already have a color are preferred. Has to
+     * be called from inside a graph task.
+     * 
+     * @param node the node
+     * @return type and direction, or null for the default color
+     */
+    public ColorKey findColorKey( final Node node )
+    {
+        return chooseColorKey( findRelationshipKeys( node ) );
+    }
+
+    /**
+     * Find the relationship types and directions a node has. The types of an
+     * embedded node are read with their counts, so the relationships
+     * themselves aren't gone through, while for remote nodes the first
+     * relationships in each direction are looked at. Has to be called from
+     * inside a graph task.
+     * 
+     * @param node the node
+     * @return relationship types with outgoing or incoming as direction
+     */
+    public List<ColorKey> findRelationshipKeys( final Node node )
+    {
+        List<ColorKey> found = new ArrayList<ColorKey>();
+        if ( node instanceof RestNode )
+        {
+            scanRelationshipKeys( node, Direction.OUTGOING, found );
+            scanRelationshipKeys( node, Direction.INCOMING, found );
+            return found;
+        }
+        for ( RelationshipType type : node.getRelationshipTypes() )
+        {
+            if ( node.getDegree( type, Direction.OUTGOING ) > 0 )
+            {
+                found.add( new ColorKey( type, Direction.OUTGOING ) );
+            }
+            if ( node.getDegree( type, Direction.INCOMING ) > 0 )
+            {
+                found.add( new ColorKey( type, Direction.INCOMING ) );
+            }
+        }
+        return found;
+    }
+
+    private void scanRelationshipKeys( final Node node,
+            final Direction direction, final List<ColorKey> found )
+    {
+        Set<String> typeNames = new HashSet<String>();
+        int count = 0;
+        for ( Relationship rel : node.getRelationships( direction ) )
+        {
+            if ( count++ >= MAX_COLOR_RELATIONSHIPS )
+            {
+                break;
+            }
+            RelationshipType type = rel.getType();
+            if ( typeNames.add( type.name() ) )
+            {
+                found.add( new ColorKey( type, direction ) );
+            }
+        }
+    }
+
+    /**
+     * Choose the color key of a node from the relationship types and
+     * directions it has, going through the directions in the configured
+     * order.
+     * 
+     * @param found relationship types with outgoing or incoming as direction
+     * @return type and direction, or null for the default color
+     */
+    public ColorKey chooseColorKey( final List<ColorKey> found )
+    {
+        ColorKey randomKey = null;
+        for ( Direction direction : settings.getDirections() )
+        {
+            for ( ColorKey key : found )
+            {
+                if ( direction != Direction.BOTH
+                     && key.getDirection() != direction )
+                {
+                    continue;
                 }
-            }, "get node color" )
-                    .get();
+                if ( colorMapper.colorExists( key.getType() ) )
+                {
+                    return new ColorKey( key.getType(), direction );
+                }
+                if ( randomKey == null )
+                {
+                    randomKey = new ColorKey( key.getType(), direction );
+                }
+            }
         }
-        catch ( Exception e )
+        return randomKey;
+    }
+
+    private Color getColorFromKey( final ColorKey colorKey,
+            final boolean marked )
+    {
+        if ( colorKey == null )
         {
-            e.printStackTrace();
+            return getNodeColor();
         }
-        return null;
+        return getColorFromDirection( colorKey.getType(),
+                colorKey.getDirection(), marked );
     }
 
     /**
@@ -576,7 +871,74 @@ public class SimpleGraphDecorator
 
     public Color getRelationshipColor( final Relationship rel )
     {
-        return colorMapper.getColor( rel.getType(), ColorCategory.RELATIONSHIP );
+        return colorMapper.getColor( getType( rel ), ColorCategory.RELATIONSHIP );
+    }
+
+    /**
+     * Get the type of a relationship, from the snapshot when possible.
+     * 
+     * @param rel the relationship
+     * @return the relationship type
+     */
+    private RelationshipType getType( final Relationship rel )
+    {
+        if ( snapshot != null )
+        {
+            RelationshipType type = snapshot.getType( rel );
+            if ( type != null )
+            {
+                return type;
+            }
+        }
+        return rel.getType();
+    }
+
+    /**
+     * Get all properties of a container, from the snapshot when possible.
+     * 
+     * @param container node or relationship
+     * @return property keys and values
+     */
+    private Map<String, Object> getProperties( final PropertyContainer container )
+    {
+        if ( snapshot != null )
+        {
+            Map<String, Object> props = snapshot.getProperties( container );
+            if ( props != null )
+            {
+                return props;
+            }
+        }
+        return GraphDbUtil.getProperties( container );
+    }
+
+    /**
+     * Get some properties of a container, from the snapshot when possible.
+     * 
+     * @param container node or relationship
+     * @param propertyKeys keys of the properties to get
+     * @return property keys and values
+     */
+    private Map<String, Object> getProperties(
+            final PropertyContainer container, final List<String> propertyKeys )
+    {
+        if ( snapshot != null )
+        {
+            Map<String, Object> all = snapshot.getProperties( container );
+            if ( all != null )
+            {
+                Map<String, Object> props = new HashMap<String, Object>();
+                for ( String key : propertyKeys )
+                {
+                    if ( all.containsKey( key ) )
+                    {
+                        props.put( key, all.get( key ) );
+                    }
+                }
+                return props;
+            }
+        }
+        return GraphDbUtil.getProperties( container, propertyKeys );
     }
 
     public Color getRelationshipColor( final RelationshipType relType )
@@ -597,7 +959,32 @@ public class SimpleGraphDecorator
         }
     }
 
+    /**
+     * Get the label of a node. Labels are rendered once and kept until the
+     * node, the shown graph or the label settings change.
+     * 
+     * @param node the node
+     * @param isReferenceNode if it's the reference node
+     * @return the label
+     */
     public String getNodeText( final Node node, final boolean isReferenceNode )
+    {
+        if ( isReferenceNode )
+        {
+            return renderNodeText( node, true );
+        }
+        checkLabelSettings();
+        if ( nodeLabels.containsKey( node.getId() ) )
+        {
+            return nodeLabels.get( node.getId() );
+        }
+        String text = renderNodeText( node, false );
+        nodeLabels.put( node.getId(), text );
+        return text;
+    }
+
+    private String renderNodeText( final Node node,
+            final boolean isReferenceNode )
     {
         if ( viewSettings.isShowNodeNames() )
         {
@@ -653,15 +1040,14 @@ public class SimpleGraphDecorator
     private String readProperties( final PropertyContainer container,
             final List<String> propertyNames, final boolean includeId )
     {
-        Map<String, Object> props = GraphDbUtil.getProperties( container,
-                propertyNames );
+        Map<String, Object> props = getProperties( container, propertyNames );
         return readPropertyValues( container, props, includeId );
     }
 
     private String readProperties( final PropertyContainer container,
             final boolean includeId )
     {
-        Map<String, Object> props = GraphDbUtil.getProperties( container );
+        Map<String, Object> props = getProperties( container );
         return readPropertyValues( container, props, includeId );
     }
 
@@ -711,15 +1097,14 @@ public class SimpleGraphDecorator
     private String readPropertiesWithKeys( final PropertyContainer container,
             final boolean includeId )
     {
-        Map<String, Object> props = GraphDbUtil.getProperties( container );
+        Map<String, Object> props = getProperties( container );
         return readPropertiesAndKeys( container, includeId, props );
     }
 
     private String readPropertiesWithKeys( final PropertyContainer container,
             List<String> propertyKeys, final boolean includeId )
     {
-        Map<String, Object> props = GraphDbUtil.getProperties( container,
-                propertyKeys );
+        Map<String, Object> props = getProperties( container, propertyKeys );
         return readPropertiesAndKeys( container, includeId, props );
     }
 
@@ -764,13 +1149,30 @@ public class SimpleGraphDecorator
         return "";
     }
 
+    /**
+     * Get the label of a relationship, kept like the node labels.
+     * 
+     * @param rel the relationship
+     * @return the label
+     */
     public String getRelationshipText( final Relationship rel )
+    {
+        checkLabelSettings();
+        String text = relLabels.get( rel.getId() );
+        if ( text == null )
+        {
+            text = renderRelationshipText( rel );
+            relLabels.put( rel.getId(), text );
+        }
+        return text;
+    }
+
+    private String renderRelationshipText( final Relationship rel )
     {
         StringBuilder str = new StringBuilder( 48 );
         if ( viewSettings.isShowRelationshipTypes() )
         {
-            str.append( rel.getType()
-                    .name() );
+            str.append( getType( rel ).name() );
         }
         if ( viewSettings.isShowRelationshipNames() )
         {
@@ -833,69 +1235,172 @@ public class SimpleGraphDecorator
         return img;
     }
 
+    /**
+     * Get the user icon of a node, from its icon properties or else from its
+     * relationship types. The name of the icon found is kept until the node,
+     * the shown graph or the icons in the icon location change.
+     * 
+     * @param node the node
+     * @param isReferenceNode if it's the reference node
+     * @return the icon
+     */
     public Image getNodeImageFromProperty( final Node node,
             final boolean isReferenceNode )
     {
-        Image img = null;
+        int version = userIcons.getVersion();
+        if ( version != iconVersion )
+        {
+            nodeIconNames.clear();
+            iconVersion = version;
+        }
+        String name;
+        if ( nodeIconNames.containsKey( node.getId() ) )
+        {
+            name = nodeIconNames.get( node.getId() );
+        }
+        else
+        {
+            Map<String, Object> props = null;
+            List<ColorKey> relKeys = null;
+            if ( snapshot != null )
+            {
+                props = snapshot.getProperties( node );
+                relKeys = snapshot.getRelationshipKeys( node );
+            }
+            if ( props == null || relKeys == null )
+            {
+                loadIconName( node );
+                return getNodeImage( node, isReferenceNode );
+            }
+            name = chooseIconName( findIconNames( props, relKeys ) );
+            nodeIconNames.put( node.getId(), name );
+        }
+        if ( name != null )
+        {
+            Image img = userIcons.getImage( name );
+            if ( img != null )
+            {
+                return img;
+            }
+        }
+        return getNodeImage( node, isReferenceNode );
+    }
+
+    /**
+     * Look up the icon of a node outside the snapshot in the background. The
+     * node is relabeled when it's found.
+     * 
+     * @param node the node
+     */
+    private void loadIconName( final Node node )
+    {
+        if ( !loadingIcons.add( node.getId() ) )
+        {
+            return;
+        }
+        final List<String> keys = settings.getNodeIconPropertyNames();
+        Activator.getDefault().getGraphDbServiceManager().submitReadTask(
+                new GraphCallable<List<String>>()
+                {
+                    @Override
+                    public List<String> call( final GraphDatabaseService graphDb )
+                    {
+                        Map<String, Object> props = new HashMap<String, Object>();
+                        for ( String key : keys )
+                        {
+                            if ( node.hasProperty( key ) )
+                            {
+                                props.put( key, node.getProperty( key ) );
+                            }
+                        }
+                        return findIconNames( props, findRelationshipKeys( node ) );
+                    }
+                }, new GraphCallback<List<String>>()
+                {
+                    @Override
+                    public void done( final List<String> names )
+                    {
+                        loadingIcons.remove( node.getId() );
+                        nodeIconNames.put( node.getId(), chooseIconName( names ) );
+                        loaded( node );
+                    }
+
+                    @Override
+                    public void failed( final Exception exception )
+                    {
+                        loadingIcons.remove( node.getId() );
+                        // keep the default icon
+                        nodeIconNames.put( node.getId(), null );
+                        ErrorMessage.showDialog( "Error retrieving relationships",
+                                exception );
+                    }
+                }, TaskPriority.INTERACTIVE, "find icons from relationships" );
+    }
+
+    /**
+     * Find the names the user icon of a node could have, in the order they
+     * are preferred: from its icon properties first, then from its
+     * relationship types.
+     * 
+     * @param props properties of the node, at least the icon properties
+     * @param relKeys relationship types and directions of the node
+     * @return the icon names
+     */
+    private List<String> findIconNames( final Map<String, Object> props,
+            final List<ColorKey> relKeys )
+    {
+        List<String> names = new ArrayList<String>();
         // look in properties
         for ( String key : settings.getNodeIconPropertyNames() )
         {
-            Map<String, Object> props = GraphDbUtil.getProperties( node );
-            if ( !props.containsKey( key ) )
+            Object value = props.get( key );
+            if ( value == null )
             {
                 continue;
             }
-            Object value = props.get( key );
             PropertyHandler handler = PropertyTransform.getHandler( value );
             if ( !handler.isArray() )
             {
                 String tmpPropVal = handler.render( value );
                 if ( !"".equals( tmpPropVal ) ) // no empty strings
                 {
-                    img = userIcons.getImage( tmpPropVal );
-                    if ( img != null )
-                    {
-                        return img;
-                    }
+                    names.add( tmpPropVal );
                 }
             }
         }
         // look in relations
-        GraphDbServiceManager gsm = Activator.getDefault()
-                .getGraphDbServiceManager();
-        try
+        for ( Direction direction : settings.getDirections() )
         {
-            img = gsm.submitTask( new Callable<Image>()
+            for ( ColorKey key : relKeys )
             {
-                @Override
-                public Image call() throws Exception
+                if ( direction != Direction.BOTH
+                     && key.getDirection() != direction )
                 {
-                    Image img = null;
-                    for ( Direction direction : settings.getDirections() )
-                    {
-                        for ( Relationship rel : node.getRelationships( direction ) )
-                        {
-                            img = userIcons.getImage( rel.getType(), direction );
-                            if ( img != null )
-                            {
-                                return img;
-                            }
-                        }
-                    }
-                    return img;
+                    continue;
                 }
-            }, "find icons from relationships" )
-                    .get();
-            if ( img != null )
-            {
-                return img;
+                names.add( UserIcons.createFilename( key.getType(),
+                        key.getDirection() ) );
             }
         }
-        catch ( Exception e )
+        return names;
+    }
+
+    /**
+     * Choose the first icon name there is a user icon for.
+     * 
+     * @param names icon names in the order they are preferred
+     * @return the icon name, or null if there is no user icon for the node
+     */
+    private String chooseIconName( final List<String> names )
+    {
+        for ( String name : names )
         {
-            ErrorMessage.showDialog( "Error retrieving relationships", e );
+            if ( userIcons.getImage( name ) != null )
+            {
+                return name;
+            }
         }
-        return getNodeImage( node, isReferenceNode );
+        return null;
     }
 
     public Color getRelationshipHighlightColor( final Relationship rel )
@@ -923,7 +1428,7 @@ public class SimpleGraphDecorator
 
     public Color getMarkedRelationshipColor( final Relationship rel )
     {
-        return colorMapper.getColor( rel.getType(),
+        return colorMapper.getColor( getType( rel ),
                 ColorCategory.RELATIONSHIP_MARKED );
     }
 
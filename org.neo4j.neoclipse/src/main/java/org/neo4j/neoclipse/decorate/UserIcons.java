@@ -18,54 +18,113 @@
  */
 package org.neo4j.neoclipse.decorate;
 
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
+import org.eclipse.swt.SWTException;
 import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
 import org.eclipse.swt.widgets.Display;
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.RelationshipType;
 
 /**
- * This class manages user icons.
+ * This class manages user icons. The icon directory is indexed once and kept
+ * up to date by watching it, and the images are cached in a bounded way. It
+ * is only used from the display thread.
  * @author Anders Nawroth
  */
 public class UserIcons
 {
     /**
-     * Separator to use in file paths.
-     */
-    private static final String FILE_SEPARATOR = System
-        .getProperty( "file.separator" );
-    /**
-     * Image file EXTENSIONS to look for.
+     * Image file EXTENSIONS to look for, in order of preference.
      */
     public static final String[] EXTENSIONS = new String[] { "png", "PNG",
         "gif", "GIF", "ico", "ICO", "bmp", "BMP", "jpg", "JPG", "jpeg", "JPEG",
         "tif", "TIF", "tiff", "TIFF" };
     /**
-     * Last modified value of icons directory.
+     * Maximum number of images to keep, should be well above the number of
+     * different icons shown at once.
      */
-    private long lastModified = 0;
+    private static final int MAX_IMAGES = 256;
+    /**
+     * Maximum width or height of an icon, bigger ones are scaled down when
+     * loaded.
+     */
+    private static final int MAX_ICON_SIZE = 32;
     /**
      * The icon location.
      */
-    private final String iconLocation;
+    private String iconLocation;
     /**
-     * Contents of the icon directory.
+     * Icon files by name without extension, null until the directory has been
+     * read.
      */
-    String[] dirContents = null;
+    private Map<String,File> index = null;
     /**
-     * The images.
+     * Watches the icon directory, null if it can't be watched.
      */
-    private final Map<String,Image> images = new HashMap<String,Image>();
+    private WatchService watchService = null;
     /**
-     * Save the names of non-existing images.
+     * Last modified value of icons directory, used when it isn't watched.
      */
-    private final Set<String> misses = new HashSet<String>();
+    private long lastModified = 0;
+    /**
+     * Changes each time the icons in the directory change.
+     */
+    private int version = 0;
+    /**
+     * The images, dropping the least recently used ones.
+     */
+    private final ImageCache images = new ImageCache();
+    /**
+     * Images dropped from the cache since the last full label refresh
+     * started. Nodes labeled during that refresh can still show them.
+     */
+    private final List<Image> retired = new ArrayList<Image>();
+    /**
+     * Images dropped before the last full label refresh started, no node
+     * shows them anymore once it's done.
+     */
+    private final List<Image> releasable = new ArrayList<Image>();
+
+    private class ImageCache extends LinkedHashMap<String,Image>
+    {
+        private static final long serialVersionUID = 1L;
+
+        ImageCache()
+        {
+            super( 16, 0.75f, true );
+        }
+
+        @Override
+        protected boolean removeEldestEntry(
+            final Map.Entry<String,Image> eldest )
+        {
+            if ( size() > MAX_IMAGES )
+            {
+                retired.add( eldest.getValue() );
+                return true;
+            }
+            return false;
+        }
+    }
 
     /**
      * @param nodeIconLocation
@@ -76,53 +135,83 @@ public class UserIcons
         this.iconLocation = nodeIconLocation;
     }
 
+    public String getIconLocation()
+    {
+        return iconLocation;
+    }
+
+    /**
+     * Change where to look for icons. The images from the old location are
+     * retired.
+     * 
+     * @param nodeIconLocation
+     *            where to look for icons
+     */
+    public void setIconLocation( final String nodeIconLocation )
+    {
+        if ( nodeIconLocation == null ? iconLocation == null
+            : nodeIconLocation.equals( iconLocation ) )
+        {
+            return;
+        }
+        stopWatching();
+        retireImages();
+        index = null;
+        iconLocation = nodeIconLocation;
+        version++;
+    }
+
+    /**
+     * Get a number that changes each time icons are added to, changed in or
+     * removed from the icon directory.
+     */
+    public int getVersion()
+    {
+        pollChanges();
+        return version;
+    }
+
     /**
      * Looks up the user image for the given name.
      */
     public Image getImage( final String name )
     {
-        // TODO reduce complexity here?
-        // CC = 11, NPath complx = 252
         if ( name == null )
         {
             return null; // don't care for now
         }
+        pollChanges();
         Image img = images.get( name );
-        if ( img != null || misses.contains( name ) )
+        if ( img != null )
         {
             return img;
         }
-        File directory = new File( iconLocation );
-        if ( !directory.exists() || !directory.isDirectory() )
+        if ( index == null )
         {
-            return null; // this sholdn't happen
+            readDirectory();
         }
-        if ( directory.lastModified() != lastModified )
+        File file = index.get( name );
+        if ( file == null && watchService == null && iconLocation != null )
         {
-            lastModified = directory.lastModified();
-            dirContents = directory.list();
-            misses.clear();
-        }
-        for ( String fileName : dirContents )
-        {
-            if ( fileName.charAt( 0 ) != name.charAt( 0 ) )
+            File directory = new File( iconLocation );
+            if ( directory.lastModified() != lastModified )
             {
-                continue;
-            }
-            for ( String imgExt : EXTENSIONS )
-            {
-                if ( fileName.equals( name + "." + imgExt ) )
-                {
-                    String imgFileName = iconLocation + FILE_SEPARATOR
-                        + fileName;
-                    img = new Image( Display.getDefault(), imgFileName );
-                    images.put( name, img );
-                    return img;
-                }
+                readDirectory();
+                file = index.get( name );
             }
         }
-        misses.add( name );
-        return null;
+        if ( file == null )
+        {
+            return null;
+        }
+        img = loadImage( file );
+        if ( img == null )
+        {
+            index.remove( name );
+            return null;
+        }
+        images.put( name, img );
+        return img;
     }
 
     /**
@@ -148,4 +237,251 @@ public class UserIcons
         }
         return relType.name() + "." + direction.name();
     }
+
+    /**
+     * Dispose the images dropped from the cache before the last full label
+     * refresh started. Only call this when that refresh is done.
+     */
+    public void releaseImages()
+    {
+        for ( Image img : releasable )
+        {
+            img.dispose();
+        }
+        releasable.clear();
+    }
+
+    /**
+     * Mark the start of a full label refresh. Images dropped before it can
+     * be disposed by {@link #releaseImages()} once it's done, while the ones
+     * dropped during it have to wait for the next refresh, as nodes may have
+     * been given them already.
+     */
+    public void startRefresh()
+    {
+        releasable.addAll( retired );
+        retired.clear();
+    }
+
+    /**
+     * Dispose all images and stop watching the icon directory. The icons can
+     * still be looked up again later.
+     */
+    public void dispose()
+    {
+        stopWatching();
+        retireImages();
+        startRefresh();
+        releaseImages();
+        index = null;
+    }
+
+    /**
+     * Read the icon directory into the index. The directory is watched
+     * before it's listed, so no change is missed.
+     */
+    private void readDirectory()
+    {
+        index = new HashMap<String,File>();
+        if ( iconLocation == null )
+        {
+            return;
+        }
+        File directory = new File( iconLocation );
+        if ( !directory.exists() || !directory.isDirectory() )
+        {
+            return; // this sholdn't happen
+        }
+        lastModified = directory.lastModified();
+        if ( watchService == null )
+        {
+            startWatching( directory );
+        }
+        String[] dirContents = directory.list();
+        if ( dirContents == null )
+        {
+            return;
+        }
+        for ( String fileName : dirContents )
+        {
+            addFile( fileName );
+        }
+        version++;
+    }
+
+    private void startWatching( final File directory )
+    {
+        try
+        {
+            watchService = FileSystems.getDefault()
+                .newWatchService();
+            directory.toPath()
+                .register( watchService, ENTRY_CREATE, ENTRY_DELETE,
+                    ENTRY_MODIFY );
+        }
+        catch ( IOException e )
+        {
+            // fall back to checking the directory on misses
+            e.printStackTrace();
+            stopWatching();
+        }
+    }
+
+    private void stopWatching()
+    {
+        if ( watchService == null )
+        {
+            return;
+        }
+        try
+        {
+            watchService.close();
+        }
+        catch ( IOException e )
+        {
+            e.printStackTrace();
+        }
+        watchService = null;
+    }
+
+    /**
+     * Apply the changes to the icon directory reported since the last call.
+     */
+    private void pollChanges()
+    {
+        if ( watchService == null || index == null )
+        {
+            return;
+        }
+        boolean reread = false;
+        WatchKey key;
+        while ( watchService != null && ( key = watchService.poll() ) != null )
+        {
+            for ( WatchEvent<?> event : key.pollEvents() )
+            {
+                if ( event.kind() == OVERFLOW )
+                {
+                    reread = true;
+                }
+                else
+                {
+                    fileChanged( ( (Path) event.context() ).getFileName()
+                        .toString(), event.kind() == ENTRY_DELETE );
+                }
+            }
+            if ( !key.reset() )
+            {
+                // the directory is gone
+                stopWatching();
+                reread = true;
+            }
+            version++;
+        }
+        if ( reread )
+        {
+            retireImages();
+            readDirectory();
+        }
+    }
+
+    private void fileChanged( final String fileName, final boolean deleted )
+    {
+        String name = getIconName( fileName );
+        if ( name == null )
+        {
+            return;
+        }
+        Image img = images.remove( name );
+        if ( img != null )
+        {
+            retired.add( img );
+        }
+        if ( !deleted )
+        {
+            addFile( fileName );
+            return;
+        }
+        File file = index.get( name );
+        if ( file != null && file.getName()
+            .equals( fileName ) )
+        {
+            // use a file with another extension if there is one
+            index.remove( name );
+            for ( String imgExt : EXTENSIONS )
+            {
+                if ( new File( iconLocation, name + "." + imgExt ).isFile() )
+                {
+                    addFile( name + "." + imgExt );
+                }
+            }
+        }
+    }
+
+    /**
+     * Add an image file to the index, unless there is one with the same name
+     * and a preferred extension.
+     */
+    private void addFile( final String fileName )
+    {
+        String name = getIconName( fileName );
+        if ( name == null )
+        {
+            return;
+        }
+        File file = index.get( name );
+        if ( file == null
+            || getExtensionRank( fileName ) < getExtensionRank( file.getName() ) )
+        {
+            index.put( name, new File( iconLocation, fileName ) );
+        }
+    }
+
+    /**
+     * Get the icon name of a file, null if it isn't an image file.
+     */
+    private static String getIconName( final String fileName )
+    {
+        int dot = fileName.lastIndexOf( '.' );
+        if ( dot <= 0 || getExtensionRank( fileName ) < 0 )
+        {
+            return null;
+        }
+        return fileName.substring( 0, dot );
+    }
+
+    private static int getExtensionRank( final String fileName )
+    {
+        return Arrays.asList( EXTENSIONS )
+            .indexOf( fileName.substring( fileName.lastIndexOf( '.' ) + 1 ) );
+    }
+
+    /**
+     * Load an image, scaled down if it's bigger than an icon.
+     */
+    private static Image loadImage( final File file )
+    {
+        try
+        {
+            ImageData data = new ImageData( file.getPath() );
+            int size = Math.max( data.width, data.height );
+            if ( size > MAX_ICON_SIZE )
+            {
+                data = data.scaledTo(
+                    Math.max( 1, data.width * MAX_ICON_SIZE / size ),
+                    Math.max( 1, data.height * MAX_ICON_SIZE / size ) );
+            }
+            return new Image( Display.getDefault(), data );
+        }
+        catch ( SWTException e )
+        {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private void retireImages()
+    {
+        retired.addAll( images.values() );
+        images.clear();
+    }
 }
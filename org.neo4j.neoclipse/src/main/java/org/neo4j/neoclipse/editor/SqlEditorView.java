@@ -22,6 +22,7 @@ import java.io.File;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 
 import org.eclipse.jface.viewers.ArrayContentProvider;
 import org.eclipse.jface.viewers.ColumnLabelProvider;
@@ -47,11 +48,12 @@ import org.eclipse.swt.widgets.ToolItem;
 import org.eclipse.ui.part.ViewPart;
 import org.neo4j.neoclipse.Activator;
 import org.neo4j.neoclipse.Icons;
+import org.neo4j.neoclipse.graphdb.CancellationToken;
+import org.neo4j.neoclipse.graphdb.GraphCallback;
 import org.neo4j.neoclipse.graphdb.GraphDbServiceManager;
 import org.neo4j.neoclipse.util.ApplicationUtil;
 import org.neo4j.neoclipse.util.DataExportUtils;
 import org.neo4j.neoclipse.view.ErrorMessage;
-import org.neo4j.neoclipse.view.UiHelper;
 
 
 public class SqlEditorView extends ViewPart implements Listener
@@ -62,6 +64,11 @@ public class SqlEditorView extends ViewPart implements Listener
     private CTabFolder tabFolder;
     private Label messageStatus;
     private ToolItem tltmExecuteCypherSql;
+    private ToolItem stopCypherSql;
+    /**
+     * Stops the running query, null when no query is running.
+     */
+    private CancellationToken queryToken;
     private ToolItem exportCsv;
     private ToolItem exportJson;
     private ToolItem exportXml;
@@ -90,6 +97,13 @@ public class SqlEditorView extends ViewPart implements Listener
                 tltmExecuteCypherSql.setToolTipText( "Execute (ALT+Enter)" );
                 tltmExecuteCypherSql.setImage( Icons.EXECUTE_SQL.image() );
                 tltmExecuteCypherSql.addListener( SWT.Selection, this );
+
+                stopCypherSql = new ToolItem( toolBar, SWT.PUSH );
+                stopCypherSql.setEnabled( false );
+                stopCypherSql.setToolTipText( "Stop" );
+                stopCypherSql.setImage( Icons.STOP_ENABLED.image() );
+                stopCypherSql.setDisabledImage( Icons.STOP_DISABLED.image() );
+                stopCypherSql.addListener( SWT.Selection, this );
             }
         }
 
@@ -257,6 +271,13 @@ public class SqlEditorView extends ViewPart implements Listener
             executeCypherQuery( cypherQueryText.getText() );
 
         }
+        else if ( event.widget == stopCypherSql )
+        {
+            if ( queryToken != null )
+            {
+                queryToken.cancel();
+            }
+        }
         else if ( event.widget == exportCsv )
         {
             try
@@ -298,28 +319,78 @@ public class SqlEditorView extends ViewPart implements Listener
 
     private void executeCypherQuery( final String cypherSql )
     {
-        UiHelper.asyncExec( new Runnable()
+        if ( queryToken != null )
+        {
+            // the previous query is still running
+            return;
+        }
+        final CancellationToken token = new CancellationToken();
+        queryToken = token;
+        stopCypherSql.setEnabled( true );
+        messageStatus.setText( "Running query ..." );
+        final GraphDbServiceManager gsm = Activator.getDefault().getGraphDbServiceManager();
+        gsm.executeCypher( cypherSql, token, new GraphCallback<CypherResultSet>()
         {
             @Override
-            public void run()
+            public void done( final CypherResultSet cypherResultSet )
             {
-                final GraphDbServiceManager gsm = Activator.getDefault().getGraphDbServiceManager();
-                try
+                if ( !queryFinished( token ) )
                 {
-                    CypherResultSet cypherResultSet = gsm.executeCypher( cypherSql );
-                    displayResultSet( cypherResultSet );
+                    return;
                 }
-                catch ( Exception e )
+                displayResultSet( cypherResultSet );
+            }
+
+            @Override
+            public void failed( final Exception e )
+            {
+                if ( !queryFinished( token ) )
                 {
-                    e.printStackTrace();
-                    enableDisableToolBars( false );
-                    ErrorMessage.showDialog( "execute cypher query", e );
+                    return;
+                }
+                enableDisableToolBars( false );
+                if ( e instanceof CancellationException )
+                {
+                    messageStatus.setText( "Query cancelled." );
+                    return;
                 }
+                e.printStackTrace();
+                messageStatus.setText( "" );
+                ErrorMessage.showDialog( "execute cypher query", e );
             }
-
         } );
     }
 
+    /**
+     * Reset the view after a query.
+     * 
+     * @param token token of the query
+     * @return false if the view has been disposed
+     */
+    private boolean queryFinished( final CancellationToken token )
+    {
+        if ( queryToken == token )
+        {
+            queryToken = null;
+        }
+        if ( messageStatus.isDisposed() )
+        {
+            return false;
+        }
+        stopCypherSql.setEnabled( false );
+        return true;
+    }
+
+    @Override
+    public void dispose()
+    {
+        if ( queryToken != null )
+        {
+            queryToken.cancel();
+        }
+        super.dispose();
+    }
+
     private void displayResultSet( CypherResultSet cypherResultSet )
     {
         List<Map<String, Object>> resultSetList = cypherResultSet.getIterator();
@@ -0,0 +1,259 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.neoclipse.graphdb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.neoclipse.reltype.DirectedRelationship;
+import org.neo4j.neoclipse.util.BoundedLongHeap;
+import org.neo4j.neoclipse.util.LongArrayList;
+import org.neo4j.neoclipse.util.LongHashSet;
+import org.neo4j.rest.graphdb.entity.RestNode;
+
+/**
+ * Breadth-first traverser that fills the node limit with the most relevant
+ * nodes instead of the ones found first. Levels are still completed one
+ * after the other, but when a level has more nodes than the limit leaves
+ * room for, the best ones by the {@link NodePriority} are kept. With type
+ * weights the nodes are found best first, otherwise they are ranked in a
+ * heap bounded by the room left. Traversals over REST are left to the
+ * breadth-first traversers.
+ */
+public class BestFirstTraverser extends IdTraverser
+{
+    private volatile NodePriority priority = NodePriority.BREADTH_FIRST;
+
+    public NodePriority getPriority()
+    {
+        return priority;
+    }
+
+    public void setPriority( final NodePriority priority )
+    {
+        this.priority = priority;
+    }
+
+    @Override
+    public List<List<Node>> getLevels( final Node node,
+            final Collection<? extends DirectedRelationship> directedRels,
+            final int depth, final int nodeLimit, final FanOutLimit fanOut,
+            final Collection<FanOutPlaceholder> truncated,
+            final GraphDbServiceManager gsm, final CancellationToken token )
+    {
+        NodePriority current = priority;
+        if ( current.getMode() == NodePriority.Mode.BREADTH_FIRST
+             || directedRels.isEmpty() || gsm.isRemote() )
+        {
+            return super.getLevels( node, directedRels, depth, nodeLimit,
+                    fanOut, truncated, gsm, token );
+        }
+        setRelationshipTypes( directedRels );
+        RelationshipType[] types = getTypes( directedRels );
+        Direction[] directions = getDirections( directedRels );
+        sortByWeight( types, directions, current );
+        GraphDatabaseService graphDb = node.getGraphDatabase();
+        LongHashSet visited = new LongHashSet();
+        List<List<Node>> levels = new ArrayList<List<Node>>();
+        try
+        {
+            visited.add( node.getId() );
+            long[] ids = new long[] { node.getId() };
+            levels.add( getNodes( graphDb, ids ) );
+            int room = nodeLimit - 1;
+            for ( int level = 0; level < depth && room > 0
+                                 && !token.isCancelled(); level++ )
+            {
+                LongArrayList found = expand( graphDb, ids, types,
+                        directions, visited, null, fanOut, truncated, token );
+                if ( found.isEmpty() )
+                {
+                    break;
+                }
+                ids = select( graphDb, found, room, current );
+                room -= ids.length;
+                levels.add( getNodes( graphDb, ids ) );
+            }
+        }
+        catch ( NotFoundException nfe )
+        {
+            // the start node has been removed, like in DefaultTraverser
+            levels.clear();
+        }
+        return levels;
+    }
+
+    @Override
+    public List<Node> getNextLevel( final Collection<Node> level,
+            final Collection<? extends DirectedRelationship> directedRels,
+            final NeighbourhoodSnapshot known, final int nodeLimit,
+            final FanOutLimit fanOut,
+            final Collection<FanOutPlaceholder> truncated,
+            final CancellationToken token )
+    {
+        NodePriority current = priority;
+        if ( current.getMode() == NodePriority.Mode.BREADTH_FIRST
+             || directedRels.isEmpty() || level.isEmpty() || nodeLimit <= 0
+             || level.iterator().next() instanceof RestNode )
+        {
+            return super.getNextLevel( level, directedRels, known, nodeLimit,
+                    fanOut, truncated, token );
+        }
+        RelationshipType[] types = getTypes( directedRels );
+        Direction[] directions = getDirections( directedRels );
+        sortByWeight( types, directions, current );
+        GraphDatabaseService graphDb = level.iterator().next().getGraphDatabase();
+        long[] ids = new long[level.size()];
+        int i = 0;
+        for ( Node node : level )
+        {
+            ids[i++] = node.getId();
+        }
+        LongArrayList found = expand( graphDb, ids, types, directions,
+                new LongHashSet(), known, fanOut, truncated, token );
+        return getNodes( graphDb, select( graphDb, found, nodeLimit, current ) );
+    }
+
+    /**
+     * Find the nodes one hop away from a level that weren't seen before. The
+     * relationship types are gone through one at a time, so with type weights
+     * the nodes come out best first.
+     * 
+     * @param known nodes to leave out, can be null
+     * @return ids of the new nodes
+     */
+    private static LongArrayList expand( final GraphDatabaseService graphDb,
+            final long[] ids, final RelationshipType[] types,
+            final Direction[] directions, final LongHashSet visited,
+            final NeighbourhoodSnapshot known, final FanOutLimit fanOut,
+            final Collection<FanOutPlaceholder> truncated,
+            final CancellationToken token )
+    {
+        LongArrayList found = new LongArrayList();
+        for ( int type = 0; type < types.length; type++ )
+        {
+            for ( long id : ids )
+            {
+                if ( token.isCancelled() )
+                {
+                    return found;
+                }
+                Node current = graphDb.getNodeById( id );
+                for ( Relationship rel : fanOut.getRelationships( current,
+                        types[type], directions[type], truncated ) )
+                {
+                    long otherId = rel.getOtherNode( current ).getId();
+                    if ( ( known == null || known.getNode( otherId ) == null )
+                         && visited.add( otherId ) )
+                    {
+                        found.add( otherId );
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Keep the best of the found nodes that there is room for.
+     * 
+     * @return the ids to keep, best first when some were left out
+     */
+    private static long[] select( final GraphDatabaseService graphDb,
+            final LongArrayList found, final int room,
+            final NodePriority priority )
+    {
+        if ( found.size() <= room )
+        {
+            return found.toArray();
+        }
+        if ( priority.getMode() == NodePriority.Mode.TYPE_WEIGHT )
+        {
+            // already found in order of weight
+            long[] ids = new long[room];
+            for ( int i = 0; i < room; i++ )
+            {
+                ids[i] = found.get( i );
+            }
+            return ids;
+        }
+        BoundedLongHeap best = new BoundedLongHeap( room );
+        for ( int i = 0; i < found.size(); i++ )
+        {
+            long id = found.get( i );
+            best.offer( id, priority.getScore( graphDb.getNodeById( id ) ) );
+        }
+        return best.drain();
+    }
+
+    private static List<Node> getNodes( final GraphDatabaseService graphDb,
+            final long[] ids )
+    {
+        List<Node> nodes = new ArrayList<Node>( ids.length );
+        for ( long id : ids )
+        {
+            nodes.add( graphDb.getNodeById( id ) );
+        }
+        return nodes;
+    }
+
+    /**
+     * Put the relationship types with the highest weight first, keeping the
+     * order of the filter otherwise.
+     */
+    private static void sortByWeight( final RelationshipType[] types,
+            final Direction[] directions, final NodePriority priority )
+    {
+        if ( priority.getMode() != NodePriority.Mode.TYPE_WEIGHT )
+        {
+            return;
+        }
+        Integer[] order = new Integer[types.length];
+        for ( int i = 0; i < order.length; i++ )
+        {
+            order[i] = i;
+        }
+        final RelationshipType[] unsortedTypes = types.clone();
+        Arrays.sort( order, new Comparator<Integer>()
+        {
+            @Override
+            public int compare( final Integer first, final Integer second )
+            {
+                return Double.compare(
+                        priority.getWeight( unsortedTypes[second] ),
+                        priority.getWeight( unsortedTypes[first] ) );
+            }
+        } );
+        Direction[] unsortedDirections = directions.clone();
+        for ( int i = 0; i < order.length; i++ )
+        {
+            types[i] = unsortedTypes[order[i]];
+            directions[i] = unsortedDirections[order[i]];
+        }
+    }
+}
@@ -0,0 +1,407 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.neoclipse.graphdb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.neoclipse.reltype.DirectedRelationship;
+import org.neo4j.rest.graphdb.RestGraphDatabase;
+
+/**
+ * Traverser remembering the node ids of recent traversals of another
+ * traverser, so going back to a node that was just shown doesn't traverse
+ * again. The least recently used
+ * results are dropped when too many ids are held, and all of them when
+ * changes are committed or rolled back or the database is stopped. The cache
+ * is bypassed while there are uncommitted changes.
+ */
+public class CachingTraverser implements TraversalStrategy,
+        GraphDbServiceEventListener
+{
+    /**
+     * Maximum number of traversal results to keep.
+     */
+    private static final int MAX_ENTRIES = 64;
+    /**
+     * Maximum number of node ids to keep over all results.
+     */
+    private static final int MAX_IDS = 200000;
+
+    private static class Key
+    {
+        private final long nodeId;
+        private final int depth;
+        private final int nodeLimit;
+        private final Map<String, Direction> filter;
+        private final FanOutLimit fanOut;
+
+        Key( final long nodeId, final int depth, final int nodeLimit,
+                final Map<String, Direction> filter, final FanOutLimit fanOut )
+        {
+            this.nodeId = nodeId;
+            this.depth = depth;
+            this.nodeLimit = nodeLimit;
+            this.filter = filter;
+            this.fanOut = fanOut;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int result = (int) ( nodeId ^ ( nodeId >>> 32 ) );
+            result = 31 * result + depth;
+            result = 31 * result + nodeLimit;
+            result = 31 * result + filter.hashCode();
+            return 31 * result + fanOut.hashCode();
+        }
+
+        @Override
+        public boolean equals( final Object obj )
+        {
+            if ( !( obj instanceof Key ) )
+            {
+                return false;
+            }
+            Key other = (Key) obj;
+            return nodeId == other.nodeId && depth == other.depth
+                   && nodeLimit == other.nodeLimit
+                   && filter.equals( other.filter )
+                   && fanOut.equals( other.fanOut );
+        }
+    }
+
+    private static class Entry
+    {
+        private final long[][] ids;
+        private final FanOutPlaceholder[] placeholders;
+
+        Entry( final long[][] ids, final FanOutPlaceholder[] placeholders )
+        {
+            this.ids = ids;
+            this.placeholders = placeholders;
+        }
+    }
+
+    /**
+     * Node ids by level and left out relationships, in least recently used
+     * order.
+     */
+    private final LinkedHashMap<Key, Entry> cache = new LinkedHashMap<Key, Entry>(
+            16, 0.75f, true );
+    private int cachedIds = 0;
+    private volatile DefaultTraverser traverser;
+
+    /**
+     * Create a cache in front of a traverser.
+     * 
+     * @param traverser does the actual traversals
+     */
+    public CachingTraverser( final DefaultTraverser traverser )
+    {
+        this.traverser = traverser;
+    }
+
+    /**
+     * Replace the traverser doing the actual traversals.
+     * 
+     * @param traverser the traverser to use from now on
+     */
+    public void setTraverser( final DefaultTraverser traverser )
+    {
+        this.traverser = traverser;
+    }
+
+    @Override
+    public List<List<Node>> getLevels( final Node node,
+            final Collection<? extends DirectedRelationship> directedRels,
+            final int depth, final int nodeLimit, final FanOutLimit fanOut,
+            final Collection<FanOutPlaceholder> truncated,
+            final GraphDbServiceManager gsm, final CancellationToken token )
+    {
+        if ( gsm.hasPendingChanges() )
+        {
+            clear();
+            return traverser.getLevels( node, directedRels, depth, nodeLimit,
+                    fanOut, truncated, gsm, token );
+        }
+        Key key = new Key( node.getId(), depth, nodeLimit,
+                NeighbourhoodSnapshot.getFilter( directedRels ), fanOut );
+        Entry entry = get( key );
+        if ( entry != null )
+        {
+            List<List<Node>> levels = getNodes( node.getGraphDatabase(),
+                    entry.ids );
+            if ( levels != null )
+            {
+                traverser.setRelationshipTypes( directedRels );
+                Collections.addAll( truncated, entry.placeholders );
+                return levels;
+            }
+            remove( key );
+        }
+        List<FanOutPlaceholder> placeholders = new ArrayList<FanOutPlaceholder>();
+        List<List<Node>> levels = traverser.getLevels( node, directedRels,
+                depth, nodeLimit, fanOut, placeholders, gsm, token );
+        truncated.addAll( placeholders );
+        if ( !token.isCancelled() )
+        {
+            put( key, new Entry( getIds( levels ),
+                    placeholders.toArray( new FanOutPlaceholder[placeholders.size()] ) ) );
+        }
+        return levels;
+    }
+
+    /**
+     * Check if a traversal is cached.
+     * 
+     * @return true if {@link #getLevels} would take it from the cache
+     */
+    public boolean isCached( final Node node,
+            final Collection<? extends DirectedRelationship> directedRels,
+            final int depth, final int nodeLimit, final FanOutLimit fanOut,
+            final GraphDbServiceManager gsm )
+    {
+        if ( gsm.hasPendingChanges() )
+        {
+            return false;
+        }
+        return get( new Key( node.getId(), depth, nodeLimit,
+                NeighbourhoodSnapshot.getFilter( directedRels ), fanOut ) ) != null;
+    }
+
+    /**
+     * Remember the result of a traversal that was done level by level, so
+     * the next traversal with the same arguments is taken from the cache.
+     * Nothing is kept while there are uncommitted changes.
+     * 
+     * @param levels the nodes found, by level
+     * @param truncated the relationships left out
+     */
+    public void putLevels( final Node node,
+            final Collection<? extends DirectedRelationship> directedRels,
+            final int depth, final int nodeLimit, final FanOutLimit fanOut,
+            final List<List<Node>> levels,
+            final Collection<FanOutPlaceholder> truncated,
+            final GraphDbServiceManager gsm )
+    {
+        if ( gsm.hasPendingChanges() )
+        {
+            return;
+        }
+        put( new Key( node.getId(), depth, nodeLimit,
+                NeighbourhoodSnapshot.getFilter( directedRels ), fanOut ),
+                new Entry( getIds( levels ),
+                        truncated.toArray( new FanOutPlaceholder[truncated.size()] ) ) );
+    }
+
+    @Override
+    public List<Node> getNextLevel( final Collection<Node> level,
+            final Collection<? extends DirectedRelationship> directedRels,
+            final NeighbourhoodSnapshot known, final int nodeLimit,
+            final FanOutLimit fanOut,
+            final Collection<FanOutPlaceholder> truncated,
+            final CancellationToken token )
+    {
+        return traverser.getNextLevel( level, directedRels, known, nodeLimit,
+                fanOut, truncated, token );
+    }
+
+    @Override
+    public Collection<Relationship> getRelationships( final Node start,
+            final Node end )
+    {
+        return traverser.getRelationships( start, end );
+    }
+
+    @Override
+    public Map<Long, List<Relationship>> getOutgoingRelationships(
+            final Node start )
+    {
+        return traverser.getOutgoingRelationships( start );
+    }
+
+    private static long[][] getIds( final List<List<Node>> levels )
+    {
+        long[][] ids = new long[levels.size()][];
+        for ( int level = 0; level < ids.length; level++ )
+        {
+            List<Node> nodes = levels.get( level );
+            ids[level] = new long[nodes.size()];
+            for ( int i = 0; i < ids[level].length; i++ )
+            {
+                ids[level][i] = nodes.get( i ).getId();
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Look the cached ids up again. Nodes of a remote database are loaded in
+     * one request.
+     * 
+     * @return the nodes, null if one of them is gone
+     */
+    private static List<List<Node>> getNodes(
+            final GraphDatabaseService graphDb, final long[][] ids )
+    {
+        if ( graphDb instanceof RestGraphDatabase )
+        {
+            return getRemoteNodes( graphDb, ids );
+        }
+        List<List<Node>> levels = new ArrayList<List<Node>>( ids.length );
+        try
+        {
+            for ( long[] levelIds : ids )
+            {
+                List<Node> nodes = new ArrayList<Node>( levelIds.length );
+                for ( long id : levelIds )
+                {
+                    nodes.add( graphDb.getNodeById( id ) );
+                }
+                levels.add( nodes );
+            }
+        }
+        catch ( NotFoundException e )
+        {
+            return null;
+        }
+        return levels;
+    }
+
+    private static List<List<Node>> getRemoteNodes(
+            final GraphDatabaseService graphDb, final long[][] ids )
+    {
+        List<Long> all = new ArrayList<Long>();
+        for ( long[] levelIds : ids )
+        {
+            for ( long id : levelIds )
+            {
+                all.add( id );
+            }
+        }
+        Map<Long, Node> loaded;
+        try
+        {
+            loaded = new RestPrefetch( graphDb ).getNodes( all );
+        }
+        catch ( RuntimeException e )
+        {
+            // the query fails when one of the nodes is gone
+            return null;
+        }
+        List<List<Node>> levels = new ArrayList<List<Node>>( ids.length );
+        for ( long[] levelIds : ids )
+        {
+            List<Node> nodes = new ArrayList<Node>( levelIds.length );
+            for ( long id : levelIds )
+            {
+                Node node = loaded.get( id );
+                if ( node == null )
+                {
+                    return null;
+                }
+                nodes.add( node );
+            }
+            levels.add( nodes );
+        }
+        return levels;
+    }
+
+    private synchronized Entry get( final Key key )
+    {
+        return cache.get( key );
+    }
+
+    private synchronized void put( final Key key, final Entry entry )
+    {
+        int count = countIds( entry );
+        if ( count > MAX_IDS )
+        {
+            return;
+        }
+        Entry previous = cache.put( key, entry );
+        if ( previous != null )
+        {
+            cachedIds -= countIds( previous );
+        }
+        cachedIds += count;
+        Iterator<Entry> eldest = cache.values().iterator();
+        while ( ( cachedIds > MAX_IDS || cache.size() > MAX_ENTRIES )
+                && eldest.hasNext() )
+        {
+            cachedIds -= countIds( eldest.next() );
+            eldest.remove();
+        }
+    }
+
+    private synchronized void remove( final Key key )
+    {
+        Entry removed = cache.remove( key );
+        if ( removed != null )
+        {
+            cachedIds -= countIds( removed );
+        }
+    }
+
+    /**
+     * Drop all cached traversals.
+     */
+    public synchronized void clear()
+    {
+        cache.clear();
+        cachedIds = 0;
+    }
+
+    private static int countIds( final Entry entry )
+    {
+        int count = entry.placeholders.length;
+        for ( long[] levelIds : entry.ids )
+        {
+            count += levelIds.length;
+        }
+        return count;
+    }
+
+    @Override
+    public void serviceChanged( final GraphDbServiceEvent event )
+    {
+        switch ( event.getStatus() )
+        {
+        case COMMIT:
+        case ROLLBACK:
+        case STOPPING:
+        case STOPPED:
+            clear();
+            break;
+        default:
+            break;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.neoclipse.graphdb;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Lets the owner of a running task ask it to stop. Long running loops check
+ * the token and give up early once it's cancelled.
+ */
+public class CancellationToken
+{
+    private volatile boolean cancelled = false;
+
+    /**
+     * Ask the task to stop.
+     */
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    /**
+     * Check if the task should stop.
+     * 
+     * @return true when cancelled
+     */
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    /**
+     * Stop the task by throwing if it has been cancelled.
+     * 
+     * @throws CancellationException when cancelled
+     */
+    public void checkCancelled()
+    {
+        if ( isCancelled() )
+        {
+            throw new CancellationException( "The task was cancelled." );
+        }
+    }
+}
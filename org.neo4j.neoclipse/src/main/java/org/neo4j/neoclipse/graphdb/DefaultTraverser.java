@@ -20,12 +20,16 @@ package org.neo4j.neoclipse.graphdb;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Path;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
 import org.neo4j.graphdb.traversal.Evaluators;
@@ -33,41 +37,59 @@ import org.neo4j.graphdb.traversal.TraversalDescription;
 import org.neo4j.kernel.Traversal;
 import org.neo4j.neoclipse.reltype.DirectedRelationship;
 import org.neo4j.neoclipse.reltype.RelationshipTypeHashSet;
+import org.neo4j.neoclipse.util.LongHashSet;
 import org.neo4j.rest.graphdb.traversal.RestTraversal;
 
 public class DefaultTraverser implements TraversalStrategy
 {
-    private final Set<RelationshipType> relTypes = new RelationshipTypeHashSet();
+    /**
+     * Relationship types of the last traversal, replaced as a whole as
+     * traversals can run concurrently with relationship lookups.
+     */
+    private volatile Set<RelationshipType> relTypes = new RelationshipTypeHashSet();
 
+    /**
+     * Traverses through the traversal framework, which doesn't leave out
+     * relationships, so the fan-out limit isn't applied here.
+     */
     @Override
-    public Collection<Node> getNodes( final Node node,
+    public List<List<Node>> getLevels( final Node node,
             final Collection<? extends DirectedRelationship> directedRels,
-            final int depth, final int nodeLimit, GraphDbServiceManager gsm )
+            final int depth, final int nodeLimit, final FanOutLimit fanOut,
+            final Collection<FanOutPlaceholder> truncated,
+            GraphDbServiceManager gsm, final CancellationToken token )
             {
-        List<Node> nodes = new ArrayList<Node>();
+        List<List<Node>> levels = new ArrayList<List<Node>>();
         if ( directedRels.isEmpty() )
         {
-            nodes.add( node );
-            return nodes;
+            levels.add( Collections.singletonList( node ) );
+            return levels;
         }
         try
         {
+            // descriptions are immutable, keep the one returned each time
             TraversalDescription description = gsm.isRemote() ? RestTraversal.description().maxDepth( depth ) : Traversal.description().evaluator( Evaluators.toDepth( depth ) ); 
-            description.breadthFirst().evaluator( Evaluators.all() );
-            relTypes.clear();
+            description = description.breadthFirst();
             for ( DirectedRelationship directedRel : directedRels )
             {
-                Direction d = directedRel.hasDirection() ?  directedRel.getDirection() : Direction.BOTH;
-                description.relationships( directedRel.getRelType(), d );
-                relTypes.add( directedRel.getRelType() );
+                description = description.relationships(
+                        directedRel.getRelType(),
+                        NeighbourhoodSnapshot.getDirection( directedRel ) );
             }
-            for ( Node currentNode : description.traverse( node ).nodes() )
+            setRelationshipTypes( directedRels );
+            int count = 0;
+            for ( Path path : description.traverse( node ) )
             {
-                if ( nodes.size() >= nodeLimit )
+                if ( count >= nodeLimit || token.isCancelled() )
                 {
                     break;
                 }
-                nodes.add( currentNode );
+                while ( levels.size() <= path.length() )
+                {
+                    levels.add( new ArrayList<Node>() );
+                }
+                levels.get( path.length() ).add( path.endNode() );
+                count++;
             }
         }
         catch ( NotFoundException nfe )
@@ -76,35 +98,102 @@ public class DefaultTraverser implements TraversalStrategy
             // somehow (could be a rollback operation)
             // just return an empty array then
         }
-        return nodes;
+        return levels;
+    }
+
+    /**
+     * Set the relationship types {@link #getRelationships(Node, Node)} looks
+     * at.
+     * 
+     * @param directedRels the traversed relationship types
+     */
+    protected void setRelationshipTypes(
+            final Collection<? extends DirectedRelationship> directedRels )
+    {
+        Set<RelationshipType> types = new RelationshipTypeHashSet();
+        for ( DirectedRelationship directedRel : directedRels )
+        {
+            types.add( directedRel.getRelType() );
+        }
+        relTypes = types;
     }
 
     @Override
-    public Collection<Relationship> getRelationships( final Node start,
-            final Node end )
-            {
-        List<Relationship> rels = new ArrayList<Relationship>();
-        if ( relTypes.isEmpty() )
+    public List<Node> getNextLevel( final Collection<Node> level,
+            final Collection<? extends DirectedRelationship> directedRels,
+            final NeighbourhoodSnapshot known, final int nodeLimit,
+            final FanOutLimit fanOut,
+            final Collection<FanOutPlaceholder> truncated,
+            final CancellationToken token )
+    {
+        List<Node> next = new ArrayList<Node>();
+        LongHashSet found = new LongHashSet();
+        for ( Node node : level )
         {
-            for ( Relationship r : start.getRelationships( Direction.OUTGOING ) )
+            for ( DirectedRelationship directedRel : directedRels )
             {
-                if ( r.getEndNode().equals( end ) )
+                token.checkCancelled();
+                for ( Relationship rel : fanOut.getRelationships( node,
+                        directedRel.getRelType(),
+                        NeighbourhoodSnapshot.getDirection( directedRel ),
+                        truncated ) )
                 {
-                    rels.add( r );
+                    Node other = rel.getOtherNode( node );
+                    if ( known.contains( other ) || !found.add( other.getId() ) )
+                    {
+                        continue;
+                    }
+                    if ( next.size() >= nodeLimit )
+                    {
+                        return next;
+                    }
+                    next.add( other );
                 }
             }
         }
-        for ( RelationshipType relType : relTypes )
-        {
-            for ( Relationship r : start.getRelationships( relType,
-                    Direction.OUTGOING ) )
+        return next;
+    }
+
+    @Override
+    public Collection<Relationship> getRelationships( final Node start,
+            final Node end )
             {
-                if ( r.getEndNode().equals( end ) )
-                {
-                    rels.add( r );
-                }
-            }
+        List<Relationship> rels = getOutgoingRelationships( start ).get(
+                end.getId() );
+        if ( rels == null )
+        {
+            return Collections.emptyList();
         }
         return rels;
             }
+
+    @Override
+    public Map<Long, List<Relationship>> getOutgoingRelationships(
+            final Node start )
+    {
+        Map<Long, List<Relationship>> byEnd = new HashMap<Long, List<Relationship>>();
+        Set<RelationshipType> relTypes = this.relTypes;
+        Iterable<Relationship> outgoing;
+        if ( relTypes.isEmpty() )
+        {
+            outgoing = start.getRelationships( Direction.OUTGOING );
+        }
+        else
+        {
+            outgoing = start.getRelationships( Direction.OUTGOING,
+                    relTypes.toArray( new RelationshipType[relTypes.size()] ) );
+        }
+        for ( Relationship r : outgoing )
+        {
+            long endId = r.getEndNode().getId();
+            List<Relationship> rels = byEnd.get( endId );
+            if ( rels == null )
+            {
+                rels = new ArrayList<Relationship>( 1 );
+                byEnd.put( endId, rels );
+            }
+            rels.add( r );
+        }
+        return byEnd;
+    }
 }
@@ -0,0 +1,206 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.neoclipse.graphdb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.rest.graphdb.entity.RestNode;
+
+/**
+ * Limits the number of relationships a traversal follows from one node for
+ * each relationship type and direction, so hub nodes don't use up the whole
+ * node budget. The limit can be raised for single nodes when the user expands
+ * a placeholder. Instances are immutable.
+ */
+public class FanOutLimit
+{
+    /**
+     * No limit at all.
+     */
+    public static final FanOutLimit NONE = new FanOutLimit( 0 );
+
+    private final int limit;
+    /**
+     * Raised limits by node id, type name and direction.
+     */
+    private final Map<String, Integer> raised;
+
+    /**
+     * Create a limit.
+     * 
+     * @param limit relationships to follow for each node, type and
+     *            direction, 0 for no limit
+     */
+    public FanOutLimit( final int limit )
+    {
+        this( limit, new HashMap<String, Integer>() );
+    }
+
+    private FanOutLimit( final int limit, final Map<String, Integer> raised )
+    {
+        this.limit = limit;
+        this.raised = raised;
+    }
+
+    /**
+     * Get the limit used for nodes that weren't raised.
+     * 
+     * @return the limit, 0 for no limit
+     */
+    public int getDefaultLimit()
+    {
+        return limit;
+    }
+
+    private static String getKey( final long nodeId, final String typeName,
+            final Direction direction )
+    {
+        return nodeId + ":" + typeName + ":" + direction.name();
+    }
+
+    /**
+     * Get the number of relationships to follow.
+     * 
+     * @param nodeId the node
+     * @param typeName name of the relationship type
+     * @param direction direction of the relationships
+     * @return the limit, {@link Integer#MAX_VALUE} for no limit
+     */
+    public int getLimit( final long nodeId, final String typeName,
+            final Direction direction )
+    {
+        if ( limit <= 0 )
+        {
+            return Integer.MAX_VALUE;
+        }
+        Integer nodeLimit = raised.get( getKey( nodeId, typeName, direction ) );
+        return nodeLimit == null ? limit : nodeLimit;
+    }
+
+    /**
+     * Follow another batch of the relationships a placeholder stands for.
+     * 
+     * @param placeholder the placeholder to expand
+     * @return the new limit
+     */
+    public FanOutLimit raise( final FanOutPlaceholder placeholder )
+    {
+        if ( limit <= 0 )
+        {
+            return this;
+        }
+        Map<String, Integer> newRaised = new HashMap<String, Integer>( raised );
+        int current = getLimit( placeholder.getNodeId(),
+                placeholder.getTypeName(), placeholder.getDirection() );
+        newRaised.put(
+                getKey( placeholder.getNodeId(), placeholder.getTypeName(),
+                        placeholder.getDirection() ),
+                (int) Math.min( Integer.MAX_VALUE, (long) current + limit ) );
+        return new FanOutLimit( limit, newRaised );
+    }
+
+    /**
+     * Get the relationships of a type and direction to follow from a node,
+     * without noting the ones left out. Has to be called from inside a graph
+     * task.
+     * 
+     * @param node the node
+     * @param type relationship type
+     * @param direction direction of the relationships
+     * @return the relationships to follow
+     */
+    public List<Relationship> getRelationships( final Node node,
+            final RelationshipType type, final Direction direction )
+    {
+        return getRelationships( node, type, direction, null );
+    }
+
+    /**
+     * Get the relationships of a type and direction to follow from a node.
+     * When there are more than the limit, a placeholder for the rest is added
+     * to the truncated ones. Has to be called from inside a graph task.
+     * 
+     * @param node the node
+     * @param type relationship type
+     * @param direction direction of the relationships
+     * @param truncated gets the placeholders, has to allow concurrent adds
+     *            when used from several threads, null to leave them out
+     * @return the relationships to follow
+     */
+    public List<Relationship> getRelationships( final Node node,
+            final RelationshipType type, final Direction direction,
+            final Collection<FanOutPlaceholder> truncated )
+    {
+        int max = getLimit( node.getId(), type.name(), direction );
+        List<Relationship> rels = new ArrayList<Relationship>();
+        for ( Relationship rel : node.getRelationships( type, direction ) )
+        {
+            if ( rels.size() >= max )
+            {
+                if ( truncated == null )
+                {
+                    break;
+                }
+                truncated.add( new FanOutPlaceholder( node.getId(),
+                        type.name(), direction, countHidden( node, type,
+                                direction, max ) ) );
+                break;
+            }
+            rels.add( rel );
+        }
+        return rels;
+    }
+
+    private static long countHidden( final Node node,
+            final RelationshipType type, final Direction direction,
+            final int followed )
+    {
+        if ( node instanceof RestNode )
+        {
+            // the REST binding can't count relationships
+            return -1;
+        }
+        return node.getDegree( type, direction ) - followed;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return limit * 31 + raised.hashCode();
+    }
+
+    @Override
+    public boolean equals( final Object obj )
+    {
+        if ( !( obj instanceof FanOutLimit ) )
+        {
+            return false;
+        }
+        FanOutLimit other = (FanOutLimit) obj;
+        return limit == other.limit && raised.equals( other.raised );
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.neoclipse.graphdb;
+
+import org.neo4j.graphdb.Direction;
+
+/**
+ * Stands in for the relationships of one type and direction a traversal left
+ * out at a node that has too many of them. It's shown as an element of its
+ * own in the graph view, connected to its node, and can be expanded on
+ * demand.
+ */
+public class FanOutPlaceholder
+{
+    /**
+     * Connection between a placeholder and its node in the graph view.
+     */
+    public static class Connection
+    {
+        private final FanOutPlaceholder placeholder;
+
+        Connection( final FanOutPlaceholder placeholder )
+        {
+            this.placeholder = placeholder;
+        }
+
+        public FanOutPlaceholder getPlaceholder()
+        {
+            return placeholder;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return placeholder.hashCode() * 31;
+        }
+
+        @Override
+        public boolean equals( final Object obj )
+        {
+            return obj instanceof Connection
+                   && placeholder.equals( ( (Connection) obj ).placeholder );
+        }
+
+        @Override
+        public String toString()
+        {
+            return "";
+        }
+    }
+
+    private final long nodeId;
+    private final String typeName;
+    private final Direction direction;
+    private final long hidden;
+    private final Connection connection = new Connection( this );
+
+    /**
+     * Create a placeholder.
+     * 
+     * @param nodeId id of the node the relationships belong to
+     * @param typeName name of the relationship type
+     * @param direction direction of the relationships
+     * @param hidden number of relationships left out, -1 if not known
+     */
+    public FanOutPlaceholder( final long nodeId, final String typeName,
+            final Direction direction, final long hidden )
+    {
+        this.nodeId = nodeId;
+        this.typeName = typeName;
+        this.direction = direction;
+        this.hidden = hidden;
+    }
+
+    public long getNodeId()
+    {
+        return nodeId;
+    }
+
+    public String getTypeName()
+    {
+        return typeName;
+    }
+
+    public Direction getDirection()
+    {
+        return direction;
+    }
+
+    /**
+     * Get the number of relationships that were left out.
+     * 
+     * @return the number, -1 if not known
+     */
+    public long getHidden()
+    {
+        return hidden;
+    }
+
+    public Connection getConnection()
+    {
+        return connection;
+    }
+
+    /**
+     * Check if the placeholder is drawn pointing away from its node.
+     * 
+     * @return false for incoming relationships
+     */
+    public boolean isOutgoing()
+    {
+        return direction != Direction.INCOMING;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int result = (int) ( nodeId ^ ( nodeId >>> 32 ) );
+        result = 31 * result + typeName.hashCode();
+        return 31 * result + direction.hashCode();
+    }
+
+    /**
+     * Placeholders for the same node, type and direction are equal, so the
+     * graph view keeps them across reloads.
+     */
+    @Override
+    public boolean equals( final Object obj )
+    {
+        if ( !( obj instanceof FanOutPlaceholder ) )
+        {
+            return false;
+        }
+        FanOutPlaceholder other = (FanOutPlaceholder) obj;
+        return nodeId == other.nodeId && typeName.equals( other.typeName )
+               && direction == other.direction;
+    }
+
+    @Override
+    public String toString()
+    {
+        if ( hidden < 0 )
+        {
+            return "+ more " + typeName;
+        }
+        return "+" + hidden + " more " + typeName;
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.neoclipse.graphdb;
+
+import org.neo4j.neoclipse.view.ErrorMessage;
+
+/**
+ * Continuation of a graph task. The methods are invoked on the display thread
+ * once the task has finished, so implementations can update widgets directly.
+ */
+public abstract class GraphCallback<T>
+{
+    /**
+     * Handle the result of the task.
+     * 
+     * @param result the value returned by the task
+     */
+    public abstract void done( T result );
+
+    /**
+     * Handle a task that failed. Shows the error by default.
+     * 
+     * @param exception the cause of the failure
+     */
+    public void failed( final Exception exception )
+    {
+        ErrorMessage.showDialog( "Database error", exception );
+    }
+}
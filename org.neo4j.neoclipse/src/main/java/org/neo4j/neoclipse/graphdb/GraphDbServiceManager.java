@@ -29,9 +29,17 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -42,6 +50,7 @@ import org.neo4j.cypher.javacompat.ExecutionEngine;
 import org.neo4j.cypher.javacompat.ExecutionResult;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.ResourceIterator;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.graphdb.factory.GraphDatabaseBuilder;
 import org.neo4j.graphdb.factory.GraphDatabaseFactory;
@@ -51,6 +60,7 @@ import org.neo4j.neoclipse.connection.Alias;
 import org.neo4j.neoclipse.connection.ConnectionMode;
 import org.neo4j.neoclipse.editor.CypherResultSet;
 import org.neo4j.neoclipse.editor.NodeWrapper;
+import org.neo4j.neoclipse.perf.TaskStatistics;
 import org.neo4j.neoclipse.preference.Preferences;
 import org.neo4j.neoclipse.util.ApplicationUtil;
 import org.neo4j.neoclipse.view.UiHelper;
@@ -70,6 +80,11 @@ public class GraphDbServiceManager
     private static final String FIND_REFERENCE_NODE_WITH_RELS_STATEMENT = "START n=node(*) MATCH n--() RETURN id(n) as id LIMIT 1";
     private static final String FIND_REFERENCE_NODE_STATEMENT = "START n=node(*) RETURN id(n) as id LIMIT 1";
     private static final String NEOCLIPSE_PACKAGE = "org.neo4j.neoclipse.";
+    /**
+     * Number of threads serving read-only tasks.
+     */
+    private static final int READ_POOL_SIZE = Math.max( 2,
+            Math.min( Runtime.getRuntime().availableProcessors(), 8 ) );
     private static Logger logger = Logger.getLogger( GraphDbServiceManager.class.getName() );
     private Alias currentAlias;
 
@@ -127,11 +142,7 @@ public class GraphDbServiceManager
                 }
 
                 lifecycle = new GraphDbLifecycle( graphDb );
-                if ( !isReadOnlyMode() )
-                {
-                    logFine( "starting tx" );
-                    tx = graphDb.beginTx();
-                }
+                referenceNodeId = 0;
                 fireServiceChangedEvent( GraphDbServiceStatus.STARTED );
             }
         };
@@ -150,16 +161,15 @@ public class GraphDbServiceManager
                 // TODO give the UI some time to deal with it here?
                 try
                 {
-                    if ( !isReadOnlyMode() )
-                    {
-                        tx.failure();
-                        tx.finish();
-                    }
+                    endUnitOfWork( false );
                 }
                 catch ( Exception e )
                 {
                     e.printStackTrace();
                 }
+                pendingChanges = false;
+                // wait for running read tasks before pulling the database
+                lifecycleLock.writeLock().lock();
                 try
                 {
                     lifecycle.manualShutdown();
@@ -172,6 +182,7 @@ public class GraphDbServiceManager
                 finally
                 {
                     lifecycle = null;
+                    lifecycleLock.writeLock().unlock();
                     fireServiceChangedEvent( GraphDbServiceStatus.STOPPED );
                 }
             }
@@ -205,18 +216,15 @@ public class GraphDbServiceManager
             @Override
             public void run()
             {
-                if ( serviceMode == GraphDbServiceMode.READ_WRITE_EMBEDDED )
-                {
-                    tx.success();
-                }
-                else
+                boolean writeMode = serviceMode == GraphDbServiceMode.READ_WRITE_EMBEDDED;
+                if ( !writeMode )
                 {
                     logFine( "Committing while not in write mode." );
                 }
                 if ( !isReadOnlyMode() )
                 {
-                    tx.finish();
-                    tx = lifecycle.graphDb().beginTx();
+                    endUnitOfWork( writeMode );
+                    pendingChanges = false;
                     fireServiceChangedEvent( GraphDbServiceStatus.COMMIT );
                 }
             }
@@ -229,8 +237,8 @@ public class GraphDbServiceManager
             {
                 if ( !isReadOnlyMode() )
                 {
-                    tx.finish();
-                    tx = lifecycle.graphDb().beginTx();
+                    endUnitOfWork( false );
+                    pendingChanges = false;
                     fireServiceChangedEvent( GraphDbServiceStatus.ROLLBACK );
                 }
             }
@@ -249,12 +257,7 @@ public class GraphDbServiceManager
         @Override
         public T call() throws Exception
         {
-            GraphDatabaseService graphDb = null;
-            if ( lifecycle != null )
-            {
-                graphDb = lifecycle.graphDb();
-            }
-            return callable.call( graphDb );
+            return runInUnitOfWork( callable );
         }
     }
 
@@ -272,14 +275,318 @@ public class GraphDbServiceManager
         @Override
         public void run()
         {
-            GraphDatabaseService graphDb = null;
-            if ( lifecycle != null )
+            logFine( "running: " + name );
+            runInUnitOfWork( new GraphRunnableCallable( runnable ) );
+            logFine( "finished running: " + name );
+        }
+    }
+
+    /**
+     * Runs a read-only task in a short transaction of its own, holding off
+     * lifecycle changes while it runs.
+     */
+    private class ReadTaskWrapper<T> implements Callable<T>
+    {
+        private final GraphCallable<T> callable;
+        private final String name;
+
+        public ReadTaskWrapper( final GraphCallable<T> callable, final String name )
+        {
+            this.callable = callable;
+            this.name = name;
+        }
+
+        @Override
+        public T call() throws Exception
+        {
+            lifecycleLock.readLock().lock();
+            try
             {
-                graphDb = lifecycle.graphDb();
+                GraphDatabaseService graphDb = null;
+                if ( lifecycle != null )
+                {
+                    graphDb = lifecycle.graphDb();
+                }
+                if ( graphDb == null )
+                {
+                    return callable.call( null );
+                }
+                logFine( "reading: " + name );
+                Transaction readTx = graphDb.beginTx();
+                try
+                {
+                    T result = callable.call( graphDb );
+                    readTx.success();
+                    return result;
+                }
+                finally
+                {
+                    readTx.finish();
+                    logFine( "finished reading: " + name );
+                }
             }
-            logFine( "running: " + name );
+            finally
+            {
+                lifecycleLock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Marks the unit of work as holding uncommitted changes before running a
+     * mutating task in it, and counts the task as done afterwards.
+     */
+    private class WriteTaskWrapper<T> implements Callable<T>
+    {
+        private final GraphCallable<T> callable;
+
+        public WriteTaskWrapper( final GraphCallable<T> callable )
+        {
+            this.callable = callable;
+        }
+
+        @Override
+        public T call() throws Exception
+        {
+            try
+            {
+                pendingChanges = true;
+                return runInUnitOfWork( callable );
+            }
+            finally
+            {
+                queuedWrites.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Adapts a {@link GraphRunnable} to a {@link GraphCallable}.
+     */
+    private static class GraphRunnableCallable implements GraphCallable<Void>
+    {
+        private final GraphRunnable runnable;
+
+        public GraphRunnableCallable( final GraphRunnable runnable )
+        {
+            this.runnable = runnable;
+        }
+
+        @Override
+        public Void call( final GraphDatabaseService graphDb )
+        {
             runnable.run( graphDb );
-            logFine( "finished running: " + name );
+            return null;
+        }
+    }
+
+    /**
+     * Hands the outcome of a task over to a {@link GraphCallback} on the
+     * display thread.
+     */
+    private static class CallbackCallable<T> implements GraphCallable<T>
+    {
+        private final GraphCallable<T> callable;
+        private final GraphCallback<T> callback;
+
+        public CallbackCallable( final GraphCallable<T> callable, final GraphCallback<T> callback )
+        {
+            this.callable = callable;
+            this.callback = callback;
+        }
+
+        @Override
+        public T call( final GraphDatabaseService graphDb )
+        {
+            final T result;
+            try
+            {
+                result = callable.call( graphDb );
+            }
+            catch ( final RuntimeException e )
+            {
+                UiHelper.asyncExec( new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        callback.failed( e );
+                    }
+                } );
+                throw e;
+            }
+            UiHelper.asyncExec( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    callback.done( result );
+                }
+            } );
+            return result;
+        }
+    }
+
+    /**
+     * Task submitted under a key. It's skipped if a newer task with the same
+     * key is submitted before it starts, and its result is dropped if that
+     * happens while it runs.
+     */
+    private class KeyedTask<T> implements GraphCallable<T>
+    {
+        private final String key;
+        private final GraphCallable<T> callable;
+        private final GraphCallback<T> callback;
+        private volatile Future<T> future;
+
+        public KeyedTask( final String key, final GraphCallable<T> callable, final GraphCallback<T> callback )
+        {
+            this.key = key;
+            this.callable = callable;
+            this.callback = callback;
+        }
+
+        @Override
+        public T call( final GraphDatabaseService graphDb )
+        {
+            if ( keyedTasks.get( key ) != this )
+            {
+                logFine( "skipping superseded task: " + key );
+                return null;
+            }
+            final T result;
+            try
+            {
+                result = callable.call( graphDb );
+            }
+            catch ( final RuntimeException e )
+            {
+                deliver( new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        callback.failed( e );
+                    }
+                } );
+                throw e;
+            }
+            deliver( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    callback.done( result );
+                }
+            } );
+            return result;
+        }
+
+        /**
+         * Runs the callback on the display thread unless the task has been
+         * superseded by then.
+         */
+        private void deliver( final Runnable delivery )
+        {
+            if ( callback == null )
+            {
+                keyedTasks.remove( key, this );
+                return;
+            }
+            UiHelper.asyncExec( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    if ( keyedTasks.remove( key, KeyedTask.this ) )
+                    {
+                        delivery.run();
+                    }
+                }
+            } );
+        }
+
+        private void supersede()
+        {
+            Future<T> queued = future;
+            if ( queued != null )
+            {
+                queued.cancel( false );
+            }
+        }
+    }
+
+    /**
+     * Records queue wait and execution time of a task. Read pool tasks are
+     * also recorded for their priority.
+     */
+    private class TimedTask<T> implements Callable<T>
+    {
+        private final Callable<T> task;
+        private final String label;
+        private final TaskPriority priority;
+        private final long submitted = System.nanoTime();
+
+        public TimedTask( final Callable<T> task, final String label, final TaskPriority priority )
+        {
+            this.task = task;
+            this.label = label;
+            this.priority = priority;
+        }
+
+        @Override
+        public T call() throws Exception
+        {
+            long started = System.nanoTime();
+            boolean failed = true;
+            try
+            {
+                T result = task.call();
+                failed = false;
+                return result;
+            }
+            finally
+            {
+                long finished = System.nanoTime();
+                statistics.record( label, started - submitted, finished - started, failed );
+                if ( priority != null )
+                {
+                    statistics.record( TaskStatistics.getPriorityLabel( priority.name() ), started - submitted,
+                            finished - started, failed );
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the threads of one execution lane and marks them with the name
+     * of the lane, so that tasks submitted from inside a task can be run
+     * inline.
+     */
+    private class LaneThreadFactory implements ThreadFactory
+    {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        public LaneThreadFactory( final String prefix )
+        {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread( final Runnable runnable )
+        {
+            Thread thread = new Thread( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    lane.set( prefix );
+                    runnable.run();
+                }
+            }, prefix + "-" + count.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
         }
     }
 
@@ -302,8 +609,58 @@ public class GraphDbServiceManager
         }
     }
 
-    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final String WRITE_LANE = "neoclipse-write";
+    private static final String READ_LANE = "neoclipse-read";
+    /**
+     * Name of the lane owning the current thread, null for other threads.
+     */
+    private final ThreadLocal<String> lane = new ThreadLocal<String>();
+    /**
+     * Serialized lane for mutations, lifecycle and all unclassified tasks.
+     */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor( new LaneThreadFactory(
+            WRITE_LANE ) );
+    /**
+     * Pool for read-only tasks, each running in a short transaction. Queued
+     * tasks are started by priority.
+     */
+    private final PriorityExecutor readExecutor = new PriorityExecutor( READ_POOL_SIZE, new LaneThreadFactory(
+            READ_LANE ) );
+    /**
+     * Held by read tasks while running, taken exclusively when the database
+     * goes away.
+     */
+    private final ReadWriteLock lifecycleLock = new ReentrantReadWriteLock();
+    /**
+     * True while the unit of work holds uncommitted changes. Reads are then
+     * routed to the write lane so they see those changes.
+     */
+    private volatile boolean pendingChanges = false;
+    /**
+     * Number of write tasks submitted but not done yet. Reads are routed to
+     * the write lane from the moment a write is submitted, so they can't
+     * overtake it.
+     */
+    private final AtomicInteger queuedWrites = new AtomicInteger();
+    /**
+     * Transaction collecting the edits made since the last commit or
+     * rollback, null when there are none. It's bound to the write lane
+     * thread and only touched from there.
+     */
+    private Transaction unitOfWork = null;
+    /**
+     * Latest task submitted for each key.
+     */
+    private final ConcurrentMap<String, KeyedTask<?>> keyedTasks = new ConcurrentHashMap<String, KeyedTask<?>>();
     private final Tasks tasks = new Tasks();
+    private final TaskStatistics statistics = new TaskStatistics();
+    private final StartNodeResolver startNodeResolver = new StartNodeResolver();
+    /**
+     * Id of the node shown as the reference node, the last node handed out
+     * by {@link #getAnyReferenceNode()}. Starts over at 0 for each
+     * connection.
+     */
+    private volatile long referenceNodeId = 0;
 
     /**
      * The service instance.
@@ -315,7 +672,6 @@ public class GraphDbServiceManager
      * The registered service change listeners.
      */
     private final ListenerList listeners = new ListenerList();
-    private Transaction tx;
     private final IPreferenceStore preferenceStore = Activator.getDefault().getPreferenceStore();
 
     /**
@@ -324,6 +680,7 @@ public class GraphDbServiceManager
     public GraphDbServiceManager()
     {
         serviceMode = GraphDbServiceMode.valueOf( preferenceStore.getString( Preferences.CONNECTION_MODE ) );
+        addServiceEventListener( startNodeResolver );
         logInfo( "Starting " + this.getClass().getSimpleName() );
     }
 
@@ -337,6 +694,73 @@ public class GraphDbServiceManager
         logger.info( message );
     }
 
+    /**
+     * Run a task from the write lane inside the unit of work. When there is
+     * no unit of work, one is opened for the task and closed again after it
+     * unless the task made changes, so no transaction is held while just
+     * browsing.
+     */
+    private <T> T runInUnitOfWork( final GraphCallable<T> callable )
+    {
+        GraphDatabaseService graphDb = null;
+        if ( lifecycle != null )
+        {
+            graphDb = lifecycle.graphDb();
+        }
+        if ( graphDb == null )
+        {
+            return callable.call( null );
+        }
+        boolean opened = false;
+        if ( unitOfWork == null )
+        {
+            logFine( "starting unit of work" );
+            unitOfWork = graphDb.beginTx();
+            opened = true;
+        }
+        try
+        {
+            return callable.call( graphDb );
+        }
+        finally
+        {
+            if ( opened && !pendingChanges )
+            {
+                endUnitOfWork( false );
+            }
+        }
+    }
+
+    /**
+     * Close the unit of work, if there is one.
+     * 
+     * @param commit true to apply the changes, false to discard them
+     */
+    private void endUnitOfWork( final boolean commit )
+    {
+        if ( unitOfWork == null )
+        {
+            return;
+        }
+        logFine( commit ? "committing unit of work" : "closing unit of work" );
+        try
+        {
+            if ( commit )
+            {
+                unitOfWork.success();
+            }
+            else
+            {
+                unitOfWork.failure();
+            }
+            unitOfWork.finish();
+        }
+        finally
+        {
+            unitOfWork = null;
+        }
+    }
+
     private Tasks tasks()
     {
         return tasks;
@@ -352,30 +776,285 @@ public class GraphDbServiceManager
         logFine( type + " -> " + name + ":\n" + info );
     }
 
+    private <T> Callable<T> timed( final Callable<T> task, final String info )
+    {
+        return new TimedTask<T>( task, info, null );
+    }
+
+    /**
+     * Get the counts and timings of the tasks run so far.
+     * 
+     * @return task statistics per task label
+     */
+    public TaskStatistics getTaskStatistics()
+    {
+        return statistics;
+    }
+
     public <T> Future<T> submitTask( final Callable<T> task, final String info )
     {
         printTask( task, "C", info );
-        return executor.submit( task );
+        return executor.submit( timed( task, info ) );
     }
 
     public <T> Future<T> submitTask( final GraphCallable<T> callable, final String info )
     {
         printTask( callable, "GC", info );
         TaskWrapper<T> wrapped = new TaskWrapper<T>( callable );
-        return executor.submit( wrapped );
+        return executor.submit( timed( wrapped, info ) );
     }
 
     public Future<?> submitTask( final Runnable runnable, final String info )
     {
         printTask( runnable, "R", info );
-        return executor.submit( runnable );
+        return executor.submit( timed( Executors.callable( runnable ), info ) );
     }
 
     public Future<?> submitTask( final GraphRunnable runnable, final String info )
     {
         printTask( runnable, "GR", info );
         RunnableWrapper wrapped = new RunnableWrapper( runnable, info );
-        return executor.submit( wrapped );
+        return executor.submit( timed( Executors.callable( wrapped ), info ) );
+    }
+
+    /**
+     * Submit a read-only task. It runs concurrently with other reads in a
+     * transaction of its own, unless there are uncommitted changes in the
+     * unit of work, in which case it is queued on the write lane to see them.
+     * 
+     * @param callable task that doesn't modify the database
+     * @param info short description of the task
+     * @return
+     */
+    public <T> Future<T> submitReadTask( final GraphCallable<T> callable, final String info )
+    {
+        return submitReadTask( callable, TaskPriority.NORMAL, info );
+    }
+
+    /**
+     * Submit a read-only task, see
+     * {@link #submitReadTask(GraphCallable, String)}. Tasks waiting for the
+     * read pool are started by priority, tasks routed to the write lane keep
+     * their order.
+     * 
+     * @param callable task that doesn't modify the database
+     * @param priority decides when the task is started
+     * @param info short description of the task
+     * @return
+     */
+    public <T> Future<T> submitReadTask( final GraphCallable<T> callable, final TaskPriority priority,
+            final String info )
+    {
+        printTask( callable, "RGC", info );
+        Callable<T> task = new TimedTask<T>( new ReadTaskWrapper<T>( callable, info ), info, priority );
+        if ( READ_LANE.equals( lane.get() ) )
+        {
+            // the surrounding read doesn't see pending changes either
+            return runInline( task );
+        }
+        if ( hasPendingChanges() )
+        {
+            return submitToWriteLane( timed( new TaskWrapper<T>( callable ), info ) );
+        }
+        if ( WRITE_LANE.equals( lane.get() ) )
+        {
+            return runInline( task );
+        }
+        return readExecutor.submit( task, priority );
+    }
+
+    /**
+     * Submit a read-only task, see
+     * {@link #submitReadTask(GraphCallable, String)}.
+     * 
+     * @param runnable task that doesn't modify the database
+     * @param info short description of the task
+     * @return
+     */
+    public Future<?> submitReadTask( final GraphRunnable runnable, final String info )
+    {
+        return submitReadTask( new GraphRunnableCallable( runnable ), info );
+    }
+
+    /**
+     * Submit a read-only task without waiting for it. The callback gets the
+     * result on the display thread, so this is the way to read from the
+     * database when called from the UI.
+     * 
+     * @param callable task that doesn't modify the database
+     * @param callback continuation to run on the display thread
+     * @param info short description of the task
+     * @return
+     */
+    public <T> Future<T> submitReadTask( final GraphCallable<T> callable, final GraphCallback<T> callback,
+            final String info )
+    {
+        return submitReadTask( callable, callback, TaskPriority.NORMAL, info );
+    }
+
+    /**
+     * Submit a read-only task without waiting for it, see
+     * {@link #submitReadTask(GraphCallable, GraphCallback, String)}.
+     * 
+     * @param callable task that doesn't modify the database
+     * @param callback continuation to run on the display thread
+     * @param priority decides when the task is started
+     * @param info short description of the task
+     * @return
+     */
+    public <T> Future<T> submitReadTask( final GraphCallable<T> callable, final GraphCallback<T> callback,
+            final TaskPriority priority, final String info )
+    {
+        return submitReadTask( new CallbackCallable<T>( callable, callback ), priority, info );
+    }
+
+    /**
+     * Submit a task to the write lane without waiting for it. The callback
+     * gets the result on the display thread.
+     * 
+     * @param callable task to run
+     * @param callback continuation to run on the display thread
+     * @param info short description of the task
+     * @return
+     */
+    public <T> Future<T> submitTask( final GraphCallable<T> callable, final GraphCallback<T> callback,
+            final String info )
+    {
+        return submitTask( new CallbackCallable<T>( callable, callback ), info );
+    }
+
+    /**
+     * Submit a read-only task that replaces any pending task with the same
+     * key. A replaced task is cancelled if it hasn't started, and its
+     * callback isn't run. Use this for requests where only the latest one
+     * matters, like loading what the graph view should show.
+     * 
+     * @param key identifies the request the task is for
+     * @param callable task that doesn't modify the database
+     * @param callback continuation to run on the display thread
+     * @param priority decides when the task is started
+     * @param info short description of the task
+     * @return
+     */
+    public <T> Future<T> submitReadTask( final String key, final GraphCallable<T> callable,
+            final GraphCallback<T> callback, final TaskPriority priority, final String info )
+    {
+        KeyedTask<T> task = new KeyedTask<T>( key, callable, callback );
+        KeyedTask<?> previous = keyedTasks.put( key, task );
+        task.future = submitReadTask( task, priority, info );
+        if ( previous != null )
+        {
+            previous.supersede();
+        }
+        return task.future;
+    }
+
+    /**
+     * Submit a task to the write lane that replaces any pending task with the
+     * same key, see
+     * {@link #submitReadTask(String, GraphCallable, GraphCallback, TaskPriority, String)}.
+     * 
+     * @param key identifies the request the task is for
+     * @param runnable task to run
+     * @param info short description of the task
+     * @return
+     */
+    public Future<?> submitTask( final String key, final Runnable runnable, final String info )
+    {
+        KeyedTask<Void> task = new KeyedTask<Void>( key, new GraphCallable<Void>()
+        {
+            @Override
+            public Void call( final GraphDatabaseService graphDb )
+            {
+                runnable.run();
+                return null;
+            }
+        }, null );
+        KeyedTask<?> previous = keyedTasks.put( key, task );
+        task.future = submitTask( task, info );
+        if ( previous != null )
+        {
+            previous.supersede();
+        }
+        return task.future;
+    }
+
+    /**
+     * Submit a task that modifies the database. It's queued on the serialized
+     * write lane and routes reads there until the next commit or rollback.
+     * 
+     * @param callable mutating task
+     * @param info short description of the task
+     * @return
+     */
+    public <T> Future<T> submitWriteTask( final GraphCallable<T> callable, final String info )
+    {
+        printTask( callable, "WGC", info );
+        queuedWrites.incrementAndGet();
+        try
+        {
+            return submitToWriteLane( timed( new WriteTaskWrapper<T>( callable ), info ) );
+        }
+        catch ( RuntimeException e )
+        {
+            // the task was rejected and will never run
+            queuedWrites.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Submit a task that modifies the database without waiting for it, see
+     * {@link #submitWriteTask(GraphCallable, String)}. The callback gets the
+     * result on the display thread.
+     * 
+     * @param callable mutating task
+     * @param callback continuation to run on the display thread
+     * @param info short description of the task
+     * @return
+     */
+    public <T> Future<T> submitWriteTask( final GraphCallable<T> callable, final GraphCallback<T> callback,
+            final String info )
+    {
+        return submitWriteTask( new CallbackCallable<T>( callable, callback ), info );
+    }
+
+    /**
+     * Submit a task that modifies the database, see
+     * {@link #submitWriteTask(GraphCallable, String)}.
+     * 
+     * @param runnable mutating task
+     * @param info short description of the task
+     * @return
+     */
+    public Future<?> submitWriteTask( final GraphRunnable runnable, final String info )
+    {
+        return submitWriteTask( new GraphRunnableCallable( runnable ), info );
+    }
+
+    /**
+     * Tasks submitted from the write lane are run inline, waiting for them
+     * there would dead-lock the lane. Read tasks can't submit to the write
+     * lane, as they would wait for it while keeping the database open.
+     */
+    private <T> Future<T> submitToWriteLane( final Callable<T> task )
+    {
+        if ( WRITE_LANE.equals( lane.get() ) )
+        {
+            return runInline( task );
+        }
+        if ( READ_LANE.equals( lane.get() ) )
+        {
+            throw new IllegalStateException( "A read task can't submit tasks to the write lane." );
+        }
+        return executor.submit( task );
+    }
+
+    private <T> Future<T> runInline( final Callable<T> task )
+    {
+        FutureTask<T> inline = new FutureTask<T>( task );
+        inline.run();
+        return inline;
     }
 
     /**
@@ -388,7 +1067,7 @@ public class GraphDbServiceManager
     public void submitDisplayTask( final Runnable runnable, final String info )
     {
         DisplayRunnable wrapped = new DisplayRunnable( runnable, info );
-        executor.submit( wrapped );
+        executor.submit( timed( Executors.callable( wrapped ), info ) );
     }
 
     public void executeTask( final GraphRunnable runnable, final String info )
@@ -410,6 +1089,10 @@ public class GraphDbServiceManager
         {
             executor.shutdown();
         }
+        if ( !readExecutor.isShutdown() )
+        {
+            readExecutor.shutdown();
+        }
     }
 
     public boolean isRunning()
@@ -417,6 +1100,17 @@ public class GraphDbServiceManager
         return lifecycle != null && lifecycle.graphDb() != null;
     }
 
+    /**
+     * Check if there are changes that haven't been committed or rolled back,
+     * or write tasks that haven't run yet.
+     * 
+     * @return true if the unit of work holds or is about to hold changes
+     */
+    public boolean hasPendingChanges()
+    {
+        return pendingChanges || queuedWrites.get() > 0;
+    }
+
     public boolean isReadOnlyMode()
     {
         return serviceMode == GraphDbServiceMode.READ_ONLY_EMBEDDED;
@@ -496,7 +1190,28 @@ public class GraphDbServiceManager
      */
     public CypherResultSet executeCypher( final String cypherSql ) throws Exception
     {
-        return submitTask( new GraphCallable<CypherResultSet>()
+        return submitTask( cypherTask( cypherSql, new CancellationToken() ), "execute cypher query" ).get();
+    }
+
+    /**
+     * Execute a Cypher query without waiting for it. Cancelling the token
+     * stops reading the result, and the callback then gets a
+     * {@link CancellationException}.
+     * 
+     * @param cypherSql the query
+     * @param token stops the query when cancelled
+     * @param callback gets the result on the display thread
+     * @return the pending query, to wait for or cancel it
+     */
+    public Future<CypherResultSet> executeCypher( final String cypherSql, final CancellationToken token,
+            final GraphCallback<CypherResultSet> callback )
+    {
+        return submitTask( cypherTask( cypherSql, token ), callback, "execute cypher query" );
+    }
+
+    private GraphCallable<CypherResultSet> cypherTask( final String cypherSql, final CancellationToken token )
+    {
+        return new GraphCallable<CypherResultSet>()
         {
             @Override
             public CypherResultSet call( GraphDatabaseService graphDb )
@@ -509,11 +1224,12 @@ public class GraphDbServiceManager
                 String message = null;
                 Iterator<Map<String, Object>> iterator = null;
                 List<String> columns = new ArrayList<String>();
+                ExecutionResult result = null;
                 //
                 if ( currentAlias.getConnectionMode() != ConnectionMode.REMOTE )
                 {
                     ExecutionEngine engine = new ExecutionEngine( graphDb );
-                    ExecutionResult result = engine.execute( cypherQuery );
+                    result = engine.execute( cypherQuery );
                     // message = result.toString().substring( result.toString().lastIndexOf( "+" ) + 1 ).trim();
                     columns = result.columns();
                     iterator = result.iterator();
@@ -528,6 +1244,14 @@ public class GraphDbServiceManager
                 final LinkedList<Map<String, Object>> resultList = new LinkedList<Map<String, Object>>();
                 while ( iterator.hasNext() )
                 {
+                    if ( token.isCancelled() )
+                    {
+                        if ( iterator instanceof ResourceIterator )
+                        {
+                            ( (ResourceIterator<?>) iterator ).close();
+                        }
+                        token.checkCancelled();
+                    }
                     Map<String, Object> resultMap = iterator.next();
                     LinkedHashMap<String, Object> newMap = new LinkedHashMap<String, Object>();
                     Set<Entry<String, Object>> entrySet = resultMap.entrySet();
@@ -558,6 +1282,10 @@ public class GraphDbServiceManager
                     }
                     resultList.add( newMap );
                 }
+                if ( result != null && result.getQueryStatistics().containsUpdates() )
+                {
+                    pendingChanges = true;
+                }
                 return new CypherResultSet( resultList, columns, message );
             }
 
@@ -568,7 +1296,7 @@ public class GraphDbServiceManager
                 return Arrays.asList( columns );
             }
 
-        }, "execute cypher query" ).get();
+        };
     }
 
     
@@ -580,7 +1308,7 @@ public class GraphDbServiceManager
      */
     public List<NodeWrapper> getAllNodes() throws Exception
     {
-        return submitTask( new GraphCallable<List<NodeWrapper>>()
+        return submitReadTask( new GraphCallable<List<NodeWrapper>>()
         {
             @Override
             public List<NodeWrapper> call( GraphDatabaseService graphDb )
@@ -595,7 +1323,7 @@ public class GraphDbServiceManager
                 return list;
             }
 
-        }, "get all nodes" ).get();
+        }, TaskPriority.BULK, "get all nodes" ).get();
     }
 
     /**
@@ -659,19 +1387,51 @@ public class GraphDbServiceManager
         return currentAlias;
     }
 
+    /**
+     * Find a node to start browsing from, preferring nodes that have
+     * relationships. The last node found is reused until the next commit or
+     * rollback, and the store is only scanned when probing the low ids fails.
+     * The node found is the one shown as the reference node.
+     * 
+     * @return some node, <code>null</code> for an empty database
+     * @throws Exception
+     */
     public Node getAnyReferenceNode() throws Exception
     {
+        Node node = submitReadTask( startNodeResolver.probe( isRemote() ), TaskPriority.INTERACTIVE,
+                "find start node" ).get();
+        if ( node != null )
+        {
+            referenceNodeId = node.getId();
+            return node;
+        }
+        boolean hasRelationships = true;
         List<Map<String, Object>> result = executeCypher( FIND_REFERENCE_NODE_WITH_RELS_STATEMENT ).getIterator();
         if ( result.isEmpty() ) {
+            hasRelationships = false;
             result = executeCypher( FIND_REFERENCE_NODE_STATEMENT ).getIterator();
         }
         if ( result.isEmpty() ) {
             return null;
         }
         final long id = ((Number) result.get( 0 ).get( "id" )).longValue();
+        startNodeResolver.remember( id, hasRelationships );
+        referenceNodeId = id;
         return getNodeById( id );
     }
 
+    /**
+     * Get the id of the node shown as the reference node. It's only a
+     * number, so checking a node against it doesn't need a task.
+     * 
+     * @return the id of the last node found by {@link #getAnyReferenceNode()}
+     *         on this connection, 0 before that
+     */
+    public long getReferenceNodeId()
+    {
+        return referenceNodeId;
+    }
+
     public Node getNodeById( final long id )
     {
         return executeTask( new GraphCallable<Node>()
@@ -681,9 +1441,16 @@ public class GraphDbServiceManager
             public Node call( GraphDatabaseService graphDb )
             {
                 Transaction tx = graphDb.beginTx();
-                Node nodeById = graphDb.getNodeById( id );
-                tx.success();
-                return nodeById;
+                try
+                {
+                    Node nodeById = graphDb.getNodeById( id );
+                    tx.success();
+                    return nodeById;
+                }
+                finally
+                {
+                    tx.finish();
+                }
             }
         }, "retrieving node with id "+id );
     }
@@ -27,7 +27,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Callable;
 
 import org.eclipse.jface.dialogs.InputDialog;
 import org.eclipse.jface.dialogs.MessageDialog;
@@ -108,7 +107,7 @@ public class GraphDbUtil
         {
             Activator.getDefault()
                     .getGraphDbServiceManager()
-                    .submitTask( new GraphRunnable()
+                    .submitWriteTask( new GraphRunnable()
                     {
                         @Override
                         public void run( final GraphDatabaseService graphDb )
@@ -225,7 +224,7 @@ public class GraphDbUtil
         {
             Activator.getDefault()
                     .getGraphDbServiceManager()
-                    .submitTask( new GraphRunnable()
+                    .submitWriteTask( new GraphRunnable()
                     {
                         @Override
                         public void run( final GraphDatabaseService graphDb )
@@ -257,7 +256,9 @@ public class GraphDbUtil
                 if ( container instanceof Node )
                 {
                     Node node = (Node) container;
-                    if ( node.getId() == 0 )
+                    if ( node.getId() == Activator.getDefault()
+                            .getGraphDbServiceManager()
+                            .getReferenceNodeId() )
                     {
                         boolean confirmed = MessageDialog.openConfirm( null,
                                 CONFIRM_DELETE_TITLE,
@@ -473,25 +474,7 @@ public class GraphDbUtil
         {
             return;
         }
-        try
-        {
-            Activator.getDefault()
-                    .getGraphDbServiceManager()
-                    .submitTask( new Runnable()
-                    {
-                        @Override
-                        public void run()
-                        {
-                            container.removeProperty( key );
-                        }
-                    }, "removing a property" );
-        }
-        catch ( Exception e )
-        {
-            Dialog.openError( "Error",
-                    "Error in Neo service: " + e.getMessage() );
-        }
-        stateChanged( container, key, true, propertySheet );
+        propertySheet.getEditBuffer().removeProperty( container, key );
     }
 
     /**
@@ -507,8 +490,7 @@ public class GraphDbUtil
             final String key, final PropertyHandler propertyHandler,
             final NeoPropertySheetPage propertySheet )
     {
-
-        if ( container.hasProperty( key ) )
+        if ( propertySheet.getEditBuffer().hasProperty( container, key ) )
         {
             if ( !MessageDialog.openQuestion(
                     null,
@@ -539,10 +521,7 @@ public class GraphDbUtil
                     "Error parsing the input value, no changes will be performed." );
             return;
         }
-        if ( setTheProperty( container, key, val ) )
-        {
-            stateChanged( container, key, true, propertySheet );
-        }
+        propertySheet.getEditBuffer().setProperty( container, key, val );
     }
 
     /**
@@ -557,42 +536,7 @@ public class GraphDbUtil
             final String key, final Object value,
             final NeoPropertySheetPage propertySheet )
     {
-        if ( setTheProperty( container, key, value ) )
-        {
-            stateChanged( container, key, false, propertySheet );
-        }
-    }
-
-    private static boolean setTheProperty( final PropertyContainer container,
-            final String key, final Object value )
-    {
-        try
-        {
-            Activator.getDefault()
-                    .getGraphDbServiceManager()
-                    .submitTask( new Runnable()
-                    {
-                        @Override
-                        public void run()
-                        {
-                            container.setProperty( key, value );
-                        }
-                    }, "set property" )
-                    .get();
-        }
-        catch ( Exception e )
-        {
-            ErrorMessage.showDialog( "Set property", e );
-            return false;
-        }
-        return true;
-    }
-
-    private static void stateChanged( final PropertyContainer container,
-            final String key, final boolean refresh,
-            final NeoPropertySheetPage propertySheet )
-    {
-        propertySheet.fireChangeEvent( container, key, refresh );
+        propertySheet.getEditBuffer().setProperty( container, key, value );
     }
 
     /**
@@ -607,27 +551,12 @@ public class GraphDbUtil
             final String key, final String newKey,
             final NeoPropertySheetPage propertySheet )
     {
-        try
-        {
-            Activator.getDefault()
-                    .getGraphDbServiceManager()
-                    .submitTask( new Runnable()
-                    {
-                        @Override
-                        public void run()
-                        {
-                            container.setProperty( newKey,
-                                    container.getProperty( key ) );
-                            container.removeProperty( key );
-                        }
-                    }, "rename property" )
-                    .get();
-        }
-        catch ( Exception e )
+        if ( !propertySheet.getEditBuffer().renameProperty( container, key,
+                newKey ) )
         {
-            ErrorMessage.showDialog( "Rename property", e );
+            ErrorMessage.showDialog( "Rename property",
+                    "There is no value to move to the new key." );
         }
-        stateChanged( container, newKey, true, propertySheet );
     }
 
     public static Object getProperty( final PropertyContainer container,
@@ -637,14 +566,14 @@ public class GraphDbUtil
         {
             return Activator.getDefault()
                     .getGraphDbServiceManager()
-                    .submitTask( new Callable<Object>()
+                    .submitReadTask( new GraphCallable<Object>()
                     {
                         @Override
-                        public Object call() throws Exception
+                        public Object call( final GraphDatabaseService graphDb )
                         {
                             return container.getProperty( key, null );
                         }
-                    }, "get property" )
+                    }, TaskPriority.INTERACTIVE, "get property" )
                     .get();
         }
         catch ( Exception e )
@@ -661,10 +590,11 @@ public class GraphDbUtil
         {
             return Activator.getDefault()
                     .getGraphDbServiceManager()
-                    .submitTask( new Callable<Map<String, Object>>()
+                    .submitReadTask( new GraphCallable<Map<String, Object>>()
                     {
                         @Override
-                        public Map<String, Object> call() throws Exception
+                        public Map<String, Object> call(
+                                final GraphDatabaseService graphDb )
                         {
                             Map<String, Object> props = new HashMap<String, Object>();
                             for ( String key : container.getPropertyKeys() )
@@ -673,7 +603,7 @@ public class GraphDbUtil
                             }
                             return props;
                         }
-                    }, "get properties" )
+                    }, TaskPriority.INTERACTIVE, "get properties" )
                     .get();
         }
         catch ( Exception e )
@@ -690,10 +620,11 @@ public class GraphDbUtil
         {
             return Activator.getDefault()
                     .getGraphDbServiceManager()
-                    .submitTask( new Callable<Map<String, Object>>()
+                    .submitReadTask( new GraphCallable<Map<String, Object>>()
                     {
                         @Override
-                        public Map<String, Object> call() throws Exception
+                        public Map<String, Object> call(
+                                final GraphDatabaseService graphDb )
                         {
                             Map<String, Object> props = new HashMap<String, Object>();
                             for ( String key : propertyKeys )
@@ -705,7 +636,7 @@ public class GraphDbUtil
                             }
                             return props;
                         }
-                    }, "get properties" )
+                    }, TaskPriority.INTERACTIVE, "get properties" )
                     .get();
         }
         catch ( Exception e )
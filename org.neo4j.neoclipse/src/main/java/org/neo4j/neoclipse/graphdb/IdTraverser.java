@@ -0,0 +1,165 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.neoclipse.graphdb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.neoclipse.reltype.DirectedRelationship;
+import org.neo4j.neoclipse.util.LongArrayList;
+import org.neo4j.neoclipse.util.LongHashSet;
+
+/**
+ * Breadth-first traverser working on node ids, keeping the visited nodes and
+ * the queue in primitive collections. Nodes are only looked up again for the
+ * final result, which keeps large neighbourhoods cheap on the garbage
+ * collector. Traversals over REST are left to the server through the
+ * traversal framework.
+ */
+public class IdTraverser extends DefaultTraverser
+{
+    @Override
+    public List<List<Node>> getLevels( final Node node,
+            final Collection<? extends DirectedRelationship> directedRels,
+            final int depth, final int nodeLimit, final FanOutLimit fanOut,
+            final Collection<FanOutPlaceholder> truncated,
+            final GraphDbServiceManager gsm, final CancellationToken token )
+    {
+        if ( directedRels.isEmpty() || gsm.isRemote() )
+        {
+            return super.getLevels( node, directedRels, depth, nodeLimit,
+                    fanOut, truncated, gsm, token );
+        }
+        setRelationshipTypes( directedRels );
+        RelationshipType[] types = getTypes( directedRels );
+        Direction[] directions = getDirections( directedRels );
+        GraphDatabaseService graphDb = node.getGraphDatabase();
+        LongHashSet visited = new LongHashSet();
+        LongArrayList queue = new LongArrayList();
+        // index in the queue where each level starts
+        List<Integer> levelStarts = new ArrayList<Integer>();
+        List<List<Node>> levels = new ArrayList<List<Node>>();
+        try
+        {
+            visited.add( node.getId() );
+            queue.add( node.getId() );
+            levelStarts.add( 0 );
+            int levelStart = 0;
+            boolean full = queue.size() >= nodeLimit;
+            for ( int level = 0; level < depth && !full; level++ )
+            {
+                int levelEnd = queue.size();
+                for ( int index = levelStart; index < levelEnd && !full; index++ )
+                {
+                    if ( token.isCancelled() )
+                    {
+                        full = true;
+                        break;
+                    }
+                    Node current = graphDb.getNodeById( queue.get( index ) );
+                    for ( int type = 0; type < types.length && !full; type++ )
+                    {
+                        for ( Relationship rel : fanOut.getRelationships(
+                                current, types[type], directions[type],
+                                truncated ) )
+                        {
+                            long otherId = rel.getOtherNode( current ).getId();
+                            if ( visited.add( otherId ) )
+                            {
+                                queue.add( otherId );
+                                if ( queue.size() >= nodeLimit )
+                                {
+                                    full = true;
+                                    break;
+                                }
+                            }
+                        }
+                    }
+                }
+                if ( queue.size() == levelEnd )
+                {
+                    break;
+                }
+                levelStart = levelEnd;
+                levelStarts.add( levelStart );
+            }
+            levelStarts.add( queue.size() );
+            for ( int level = 0; level < levelStarts.size() - 1; level++ )
+            {
+                int end = levelStarts.get( level + 1 );
+                List<Node> nodes = new ArrayList<Node>( end
+                                                        - levelStarts.get( level ) );
+                for ( int index = levelStarts.get( level ); index < end; index++ )
+                {
+                    nodes.add( graphDb.getNodeById( queue.get( index ) ) );
+                }
+                levels.add( nodes );
+            }
+        }
+        catch ( NotFoundException nfe )
+        {
+            // the start node has been removed, like in DefaultTraverser
+            levels.clear();
+        }
+        return levels;
+    }
+
+    /**
+     * Get the relationship types to traverse, in the order of the filter.
+     * 
+     * @param directedRels relationship types and direction filters
+     * @return the types
+     */
+    protected static RelationshipType[] getTypes(
+            final Collection<? extends DirectedRelationship> directedRels )
+    {
+        RelationshipType[] types = new RelationshipType[directedRels.size()];
+        int i = 0;
+        for ( DirectedRelationship directedRel : directedRels )
+        {
+            types[i++] = directedRel.getRelType();
+        }
+        return types;
+    }
+
+    /**
+     * Get the directions to traverse, matching {@link #getTypes(Collection)}.
+     * 
+     * @param directedRels relationship types and direction filters
+     * @return the directions
+     */
+    protected static Direction[] getDirections(
+            final Collection<? extends DirectedRelationship> directedRels )
+    {
+        Direction[] directions = new Direction[directedRels.size()];
+        int i = 0;
+        for ( DirectedRelationship directedRel : directedRels )
+        {
+            directions[i++] = NeighbourhoodSnapshot.getDirection( directedRel );
+        }
+        return directions;
+    }
+}
@@ -0,0 +1,595 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.neoclipse.graphdb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.neoclipse.reltype.DirectedRelationship;
+
+/**
+ * Everything the graph view needs to render one traversal result, read in a
+ * single pass inside one transaction. It's filled in by the task that did the
+ * traversal and only read after that, so it can be used from the display
+ * thread without going back to the database.
+ * <p>
+ * Nodes and relationships are kept by breadth-first level, so a snapshot can
+ * be trimmed or grown by a level without traversing again.
+ */
+public class NeighbourhoodSnapshot
+{
+    private static final Object[] NO_RELATIONSHIPS = new Object[0];
+
+    /**
+     * Relationship type and direction deciding the color of a node.
+     */
+    public static class ColorKey
+    {
+        private final RelationshipType type;
+        private final Direction direction;
+
+        public ColorKey( final RelationshipType type, final Direction direction )
+        {
+            this.type = type;
+            this.direction = direction;
+        }
+
+        public RelationshipType getType()
+        {
+            return type;
+        }
+
+        public Direction getDirection()
+        {
+            return direction;
+        }
+    }
+
+    private final Node input;
+    private final Map<String, Direction> filter;
+    private final int depth;
+    private boolean complete = true;
+    private final List<Node> nodes = new ArrayList<Node>();
+    private final List<List<Node>> nodeLevels = new ArrayList<List<Node>>();
+    private final List<List<Relationship>> relLevels = new ArrayList<List<Relationship>>();
+    private final List<List<FanOutPlaceholder>> placeholderLevels = new ArrayList<List<FanOutPlaceholder>>();
+    private final Map<Long, Integer> levelsById = new HashMap<Long, Integer>();
+    private final Map<Long, Node> nodesById = new HashMap<Long, Node>();
+    private final Map<Long, long[]> relEndpoints = new HashMap<Long, long[]>();
+    private final Map<Long, Map<String, Object>> nodeProperties = new HashMap<Long, Map<String, Object>>();
+    private final Map<Long, Map<String, Object>> relProperties = new HashMap<Long, Map<String, Object>>();
+    private final Map<Long, RelationshipType> relTypes = new HashMap<Long, RelationshipType>();
+    private final Map<Long, Map<Long, List<Relationship>>> relsByEndpoints = new HashMap<Long, Map<Long, List<Relationship>>>();
+    private final Map<Long, ColorKey> colorKeys = new HashMap<Long, ColorKey>();
+    private final Map<Long, List<ColorKey>> relationshipKeys = new HashMap<Long, List<ColorKey>>();
+
+    /**
+     * Create an empty snapshot.
+     * 
+     * @param input the node the traversal started from
+     * @param directedRels the relationship types that were traversed
+     * @param depth the traversal depth
+     */
+    public NeighbourhoodSnapshot( final Node input,
+            final Collection<? extends DirectedRelationship> directedRels,
+            final int depth )
+    {
+        this( input, getFilter( directedRels ), depth );
+    }
+
+    private NeighbourhoodSnapshot( final Node input,
+            final Map<String, Direction> filter, final int depth )
+    {
+        this.input = input;
+        this.filter = filter;
+        this.depth = depth;
+    }
+
+    /**
+     * Get the direction a relationship type is traversed in.
+     * 
+     * @param directedRel relationship type and direction filter
+     * @return the direction to traverse
+     */
+    public static Direction getDirection( final DirectedRelationship directedRel )
+    {
+        return directedRel.hasDirection() ? directedRel.getDirection()
+                : Direction.BOTH;
+    }
+
+    /**
+     * Get the relationship types and directions of a filter in a form that
+     * can be compared.
+     * 
+     * @param directedRels relationship types and direction filters
+     * @return directions by relationship type name
+     */
+    static Map<String, Direction> getFilter(
+            final Collection<? extends DirectedRelationship> directedRels )
+    {
+        Map<String, Direction> filter = new HashMap<String, Direction>();
+        for ( DirectedRelationship directedRel : directedRels )
+        {
+            filter.put( directedRel.getRelType().name(),
+                    getDirection( directedRel ) );
+        }
+        return filter;
+    }
+
+    /**
+     * Read the properties of a container into a new map.
+     * 
+     * @param container node or relationship
+     * @return property keys and values
+     */
+    public static Map<String, Object> readProperties( final PropertyContainer container )
+    {
+        Map<String, Object> props = new HashMap<String, Object>();
+        for ( String key : container.getPropertyKeys() )
+        {
+            props.put( key, container.getProperty( key ) );
+        }
+        return props;
+    }
+
+    /**
+     * Add a node and its properties.
+     * 
+     * @param node the node
+     * @param props its properties
+     * @param level number of hops from the input node
+     */
+    public void addNode( final Node node, final Map<String, Object> props,
+            final int level )
+    {
+        nodes.add( node );
+        nodeProperties.put( node.getId(), props );
+        nodesById.put( node.getId(), node );
+        levelsById.put( node.getId(), level );
+        getLevel( nodeLevels, level ).add( node );
+    }
+
+    /**
+     * Add a relationship between two nodes of the snapshot.
+     * 
+     * @param rel the relationship
+     * @param type its type
+     * @param props its properties
+     * @param startId id of the start node
+     * @param endId id of the end node
+     */
+    public void addRelationship( final Relationship rel,
+            final RelationshipType type, final Map<String, Object> props,
+            final long startId, final long endId )
+    {
+        relTypes.put( rel.getId(), type );
+        relProperties.put( rel.getId(), props );
+        relEndpoints.put( rel.getId(), new long[] { startId, endId } );
+        Map<Long, List<Relationship>> byEnd = relsByEndpoints.get( startId );
+        if ( byEnd == null )
+        {
+            byEnd = new HashMap<Long, List<Relationship>>();
+            relsByEndpoints.put( startId, byEnd );
+        }
+        List<Relationship> rels = byEnd.get( endId );
+        if ( rels == null )
+        {
+            rels = new ArrayList<Relationship>( 1 );
+            byEnd.put( endId, rels );
+        }
+        rels.add( rel );
+        // a relationship belongs to the deepest of its nodes
+        int level = Math.max( levelsById.get( startId ),
+                levelsById.get( endId ) );
+        getLevel( relLevels, level ).add( rel );
+    }
+
+    /**
+     * Add a placeholder for relationships left out at a node of the snapshot.
+     * It belongs to the level after the one of its node.
+     * 
+     * @param placeholder the placeholder
+     */
+    public void addPlaceholder( final FanOutPlaceholder placeholder )
+    {
+        Integer level = levelsById.get( placeholder.getNodeId() );
+        if ( level != null )
+        {
+            getLevel( placeholderLevels, level + 1 ).add( placeholder );
+        }
+    }
+
+    private static <T> List<T> getLevel( final List<List<T>> levels,
+            final int level )
+    {
+        while ( levels.size() <= level )
+        {
+            levels.add( new ArrayList<T>() );
+        }
+        return levels.get( level );
+    }
+
+    /**
+     * Copy the levels up to a depth into a new snapshot. A copy of a cut short
+     * snapshot is still complete when it leaves out a level holding nodes, as
+     * levels are filled in breadth-first order.
+     * 
+     * @param newDepth the depth of the copy
+     * @return the copy
+     */
+    public NeighbourhoodSnapshot copy( final int newDepth )
+    {
+        NeighbourhoodSnapshot copy = new NeighbourhoodSnapshot( input, filter,
+                newDepth );
+        int levels = Math.min( newDepth + 1, nodeLevels.size() );
+        for ( int level = 0; level < levels; level++ )
+        {
+            for ( Node node : nodeLevels.get( level ) )
+            {
+                copy.addNode( node, nodeProperties.get( node.getId() ), level );
+                if ( colorKeys.containsKey( node.getId() ) )
+                {
+                    copy.setColorKey( node.getId(),
+                            colorKeys.get( node.getId() ) );
+                }
+                if ( relationshipKeys.containsKey( node.getId() ) )
+                {
+                    copy.setRelationshipKeys( node.getId(),
+                            relationshipKeys.get( node.getId() ) );
+                }
+            }
+        }
+        levels = Math.min( newDepth + 1, relLevels.size() );
+        for ( int level = 0; level < levels; level++ )
+        {
+            for ( Relationship rel : relLevels.get( level ) )
+            {
+                long[] ends = relEndpoints.get( rel.getId() );
+                copy.addRelationship( rel, relTypes.get( rel.getId() ),
+                        relProperties.get( rel.getId() ), ends[0], ends[1] );
+            }
+        }
+        levels = Math.min( newDepth + 1, placeholderLevels.size() );
+        for ( int level = 0; level < levels; level++ )
+        {
+            for ( FanOutPlaceholder placeholder : placeholderLevels.get( level ) )
+            {
+                copy.addPlaceholder( placeholder );
+            }
+        }
+        copy.complete = complete || nodeLevels.size() > newDepth + 1;
+        return copy;
+    }
+
+    /**
+     * Mark that the traversal was cut short, so deeper levels can't be
+     * built on top of this snapshot.
+     */
+    public void setIncomplete()
+    {
+        complete = false;
+    }
+
+    /**
+     * Check if the snapshot holds all nodes up to its depth and can be
+     * grown by traversing from its last level.
+     * 
+     * @param directedRels the relationship types to traverse now
+     * @return true if the snapshot can be expanded
+     */
+    public boolean canExpand(
+            final Collection<? extends DirectedRelationship> directedRels )
+    {
+        return complete && hasFilter( directedRels );
+    }
+
+    /**
+     * Check if the snapshot was traversed with the same relationship types and
+     * directions.
+     * 
+     * @param directedRels the relationship types to traverse now
+     * @return true if they are the same
+     */
+    public boolean hasFilter(
+            final Collection<? extends DirectedRelationship> directedRels )
+    {
+        return filter.equals( getFilter( directedRels ) );
+    }
+
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * Get the nodes at a number of hops from the input node.
+     * 
+     * @param level number of hops
+     * @return the nodes, can be empty
+     */
+    public List<Node> getLevelNodes( final int level )
+    {
+        if ( level >= nodeLevels.size() )
+        {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList( nodeLevels.get( level ) );
+    }
+
+    /**
+     * Get the relationships whose deepest node is at a level.
+     * 
+     * @param level number of hops
+     * @return the relationships, can be empty
+     */
+    public List<Relationship> getLevelRelationships( final int level )
+    {
+        if ( level >= relLevels.size() )
+        {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList( relLevels.get( level ) );
+    }
+
+    /**
+     * Get the placeholders whose node is one level up.
+     * 
+     * @param level number of hops
+     * @return the placeholders, can be empty
+     */
+    public List<FanOutPlaceholder> getLevelPlaceholders( final int level )
+    {
+        if ( level >= placeholderLevels.size() )
+        {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList( placeholderLevels.get( level ) );
+    }
+
+    /**
+     * Get all placeholders for relationships that were left out.
+     * 
+     * @return the placeholders
+     */
+    public List<FanOutPlaceholder> getPlaceholders()
+    {
+        List<FanOutPlaceholder> placeholders = new ArrayList<FanOutPlaceholder>();
+        for ( List<FanOutPlaceholder> level : placeholderLevels )
+        {
+            placeholders.addAll( level );
+        }
+        return placeholders;
+    }
+
+    /**
+     * Get a node of the snapshot by its id.
+     * 
+     * @param nodeId id of the node
+     * @return the node or null if not in the snapshot
+     */
+    public Node getNode( final long nodeId )
+    {
+        return nodesById.get( nodeId );
+    }
+
+    /**
+     * Get the start node of a relationship in the snapshot.
+     * 
+     * @param rel the relationship
+     * @return start node or null if not in the snapshot
+     */
+    public Node getStartNode( final Relationship rel )
+    {
+        long[] ends = relEndpoints.get( rel.getId() );
+        return ends == null ? null : nodesById.get( ends[0] );
+    }
+
+    /**
+     * Get the end node of a relationship in the snapshot.
+     * 
+     * @param rel the relationship
+     * @return end node or null if not in the snapshot
+     */
+    public Node getEndNode( final Relationship rel )
+    {
+        long[] ends = relEndpoints.get( rel.getId() );
+        return ends == null ? null : nodesById.get( ends[1] );
+    }
+
+    /**
+     * Set what decides the color of a node.
+     * 
+     * @param nodeId id of the node
+     * @param colorKey relationship type and direction, null for the default
+     *            color
+     */
+    public void setColorKey( final long nodeId, final ColorKey colorKey )
+    {
+        colorKeys.put( nodeId, colorKey );
+    }
+
+    /**
+     * Set the relationship types and directions a node has, as found when
+     * deciding its color.
+     * 
+     * @param nodeId id of the node
+     * @param keys relationship types with outgoing or incoming as direction
+     */
+    public void setRelationshipKeys( final long nodeId,
+            final List<ColorKey> keys )
+    {
+        relationshipKeys.put( nodeId, keys );
+    }
+
+    public Node getInput()
+    {
+        return input;
+    }
+
+    /**
+     * Get the nodes in traversal order.
+     * 
+     * @return the nodes
+     */
+    public List<Node> getNodes()
+    {
+        return Collections.unmodifiableList( nodes );
+    }
+
+    /**
+     * Check if a node or relationship is part of this snapshot.
+     * 
+     * @param element node or relationship
+     * @return true if it's covered
+     */
+    public boolean contains( final Object element )
+    {
+        if ( element instanceof Node )
+        {
+            return nodeProperties.containsKey( ( (Node) element ).getId() );
+        }
+        if ( element instanceof Relationship )
+        {
+            return relProperties.containsKey( ( (Relationship) element ).getId() );
+        }
+        return false;
+    }
+
+    /**
+     * Replace the properties of a node or relationship after they have been
+     * edited. Nothing is added for containers that aren't in the snapshot.
+     * 
+     * @param container node or relationship
+     * @param props its current properties
+     */
+    public void updateProperties( final PropertyContainer container,
+            final Map<String, Object> props )
+    {
+        if ( container instanceof Node )
+        {
+            long id = ( (Node) container ).getId();
+            if ( nodeProperties.containsKey( id ) )
+            {
+                nodeProperties.put( id, props );
+            }
+        }
+        else if ( container instanceof Relationship )
+        {
+            long id = ( (Relationship) container ).getId();
+            if ( relProperties.containsKey( id ) )
+            {
+                relProperties.put( id, props );
+            }
+        }
+    }
+
+    /**
+     * Get the properties of a node or relationship.
+     * 
+     * @param container node or relationship
+     * @return property map or null if not in the snapshot
+     */
+    public Map<String, Object> getProperties( final PropertyContainer container )
+    {
+        if ( container instanceof Node )
+        {
+            return nodeProperties.get( ( (Node) container ).getId() );
+        }
+        if ( container instanceof Relationship )
+        {
+            return relProperties.get( ( (Relationship) container ).getId() );
+        }
+        return null;
+    }
+
+    /**
+     * Get the type of a relationship.
+     * 
+     * @param rel the relationship
+     * @return relationship type or null if not in the snapshot
+     */
+    public RelationshipType getType( final Relationship rel )
+    {
+        return relTypes.get( rel.getId() );
+    }
+
+    /**
+     * Get the relationships going from one node to another.
+     * 
+     * @param start start node
+     * @param end end node
+     * @return the relationships, can be empty
+     */
+    public Object[] getRelationships( final Node start, final Node end )
+    {
+        Map<Long, List<Relationship>> byEnd = relsByEndpoints.get( start.getId() );
+        if ( byEnd == null )
+        {
+            return NO_RELATIONSHIPS;
+        }
+        List<Relationship> rels = byEnd.get( end.getId() );
+        if ( rels == null )
+        {
+            return NO_RELATIONSHIPS;
+        }
+        return rels.toArray();
+    }
+
+    /**
+     * Check if the color of a node was decided in this snapshot.
+     * 
+     * @param node the node
+     * @return true if a color key (possibly null) is available
+     */
+    public boolean hasColorKey( final Node node )
+    {
+        return colorKeys.containsKey( node.getId() );
+    }
+
+    /**
+     * Get what decides the color of a node.
+     * 
+     * @param node the node
+     * @return relationship type and direction, null for the default color
+     */
+    public ColorKey getColorKey( final Node node )
+    {
+        return colorKeys.get( node.getId() );
+    }
+
+    /**
+     * Get the relationship types and directions a node has.
+     * 
+     * @param node the node
+     * @return types with outgoing or incoming as direction, null if not known
+     */
+    public List<ColorKey> getRelationshipKeys( final Node node )
+    {
+        return relationshipKeys.get( node.getId() );
+    }
+}
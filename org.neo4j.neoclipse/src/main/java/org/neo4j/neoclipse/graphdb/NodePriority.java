@@ -0,0 +1,178 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.neoclipse.graphdb;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.neoclipse.reltype.DirectedRelationship;
+import org.neo4j.neoclipse.reltype.RelationshipTypeControl;
+
+/**
+ * Decides which nodes are the most relevant ones to show when a traversal
+ * finds more of them than the node limit allows.
+ */
+public class NodePriority
+{
+    public enum Mode
+    {
+        /**
+         * Keep the nodes in the order they are found.
+         */
+        BREADTH_FIRST,
+        /**
+         * Prefer nodes with many relationships.
+         */
+        DEGREE,
+        /**
+         * Prefer nodes with a high value of a numeric property.
+         */
+        PROPERTY,
+        /**
+         * Prefer nodes reached through relationship types with a high weight.
+         */
+        TYPE_WEIGHT
+    }
+
+    public static final NodePriority BREADTH_FIRST = new NodePriority(
+            Mode.BREADTH_FIRST, "", Collections.<String, Double>emptyMap() );
+
+    private final Mode mode;
+    private final String property;
+    private final Map<String, Double> weights;
+
+    private NodePriority( final Mode mode, final String property,
+            final Map<String, Double> weights )
+    {
+        this.mode = mode;
+        this.property = property;
+        this.weights = weights;
+    }
+
+    /**
+     * Create a priority from the preference values.
+     * 
+     * @param mode name of the mode, breadth-first if unknown
+     * @param property name of the property for {@link Mode#PROPERTY}
+     * @param directedRels relationship types, the weights are read from the
+     *            ones that are controls of the relationship type view
+     * @return the priority
+     */
+    public static NodePriority create( final String mode,
+            final String property,
+            final Collection<? extends DirectedRelationship> directedRels )
+    {
+        Mode priorityMode;
+        try
+        {
+            priorityMode = Mode.valueOf( mode );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            return BREADTH_FIRST;
+        }
+        if ( priorityMode == Mode.BREADTH_FIRST
+             || priorityMode == Mode.PROPERTY
+             && ( property == null || property.trim().isEmpty() ) )
+        {
+            return BREADTH_FIRST;
+        }
+        Map<String, Double> weights = new HashMap<String, Double>();
+        if ( priorityMode == Mode.TYPE_WEIGHT )
+        {
+            for ( DirectedRelationship directedRel : directedRels )
+            {
+                if ( directedRel instanceof RelationshipTypeControl )
+                {
+                    weights.put( directedRel.getRelType().name(),
+                            ( (RelationshipTypeControl) directedRel ).getWeight() );
+                }
+            }
+        }
+        return new NodePriority( priorityMode,
+                priorityMode == Mode.PROPERTY ? property.trim() : "", weights );
+    }
+
+    public Mode getMode()
+    {
+        return mode;
+    }
+
+    /**
+     * Get the weight of a relationship type.
+     * 
+     * @param type the relationship type
+     * @return the weight, 1 if none was set
+     */
+    public double getWeight( final RelationshipType type )
+    {
+        Double weight = weights.get( type.name() );
+        return weight == null ? 1 : weight;
+    }
+
+    /**
+     * Get the score of a node for {@link Mode#DEGREE} and
+     * {@link Mode#PROPERTY}. Has to be called from inside a graph task.
+     * 
+     * @param node the node
+     * @return the score, higher is better
+     */
+    public double getScore( final Node node )
+    {
+        switch ( mode )
+        {
+        case DEGREE:
+            return node.getDegree();
+        case PROPERTY:
+            Object value = node.getProperty( property, null );
+            if ( value instanceof Number )
+            {
+                return ( (Number) value ).doubleValue();
+            }
+            // nodes without the property go last
+            return Double.NEGATIVE_INFINITY;
+        default:
+            return 0;
+        }
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int result = mode.hashCode();
+        result = 31 * result + property.hashCode();
+        return 31 * result + weights.hashCode();
+    }
+
+    @Override
+    public boolean equals( final Object obj )
+    {
+        if ( !( obj instanceof NodePriority ) )
+        {
+            return false;
+        }
+        NodePriority other = (NodePriority) obj;
+        return mode == other.mode && property.equals( other.property )
+               && weights.equals( other.weights );
+    }
+}
@@ -0,0 +1,228 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.neoclipse.graphdb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.neoclipse.reltype.DirectedRelationship;
+import org.neo4j.neoclipse.util.LongArrayList;
+
+/**
+ * Breadth-first traverser expanding each level on a fork-join pool. The
+ * visited nodes are shared between the workers and the node limit is a
+ * budget they draw from, so the result is bounded like a sequential
+ * traversal. Only used for embedded databases without uncommitted changes,
+ * as the workers read in transactions of their own.
+ */
+public class ParallelTraverser extends IdTraverser
+{
+    /**
+     * Number of nodes a worker expands before the rest is split off.
+     */
+    private static final int CHUNK_SIZE = 64;
+    private static final ForkJoinPool POOL = new ForkJoinPool();
+
+    /**
+     * Expands a slice of a level into the ids of the next one.
+     */
+    private static class ExpandTask extends RecursiveTask<LongArrayList>
+    {
+        private static final long serialVersionUID = 1L;
+        private final Level level;
+        private final int from;
+        private final int to;
+
+        ExpandTask( final Level level, final int from, final int to )
+        {
+            this.level = level;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected LongArrayList compute()
+        {
+            if ( to - from > CHUNK_SIZE )
+            {
+                int middle = ( from + to ) >>> 1;
+                ExpandTask first = new ExpandTask( level, from, middle );
+                first.fork();
+                LongArrayList second = new ExpandTask( level, middle, to ).compute();
+                LongArrayList result = first.join();
+                result.addAll( second );
+                return result;
+            }
+            LongArrayList found = new LongArrayList();
+            Transaction tx = level.graphDb.beginTx();
+            try
+            {
+                for ( int index = from; index < to; index++ )
+                {
+                    if ( level.budget.get() <= 0 || level.token.isCancelled() )
+                    {
+                        break;
+                    }
+                    expand( level.graphDb.getNodeById( level.ids[index] ), found );
+                }
+                tx.success();
+            }
+            finally
+            {
+                tx.finish();
+            }
+            return found;
+        }
+
+        private void expand( final Node node, final LongArrayList found )
+        {
+            for ( int type = 0; type < level.types.length; type++ )
+            {
+                for ( Relationship rel : level.fanOut.getRelationships( node,
+                        level.types[type], level.directions[type],
+                        level.truncated ) )
+                {
+                    long otherId = rel.getOtherNode( node ).getId();
+                    if ( level.visited.add( otherId ) )
+                    {
+                        if ( level.budget.getAndDecrement() <= 0 )
+                        {
+                            return;
+                        }
+                        found.add( otherId );
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * What the workers of one level share.
+     */
+    private static class Level
+    {
+        private final GraphDatabaseService graphDb;
+        private final long[] ids;
+        private final RelationshipType[] types;
+        private final Direction[] directions;
+        private final Set<Long> visited;
+        private final AtomicInteger budget;
+        private final FanOutLimit fanOut;
+        private final Collection<FanOutPlaceholder> truncated;
+        private final CancellationToken token;
+
+        Level( final GraphDatabaseService graphDb, final long[] ids,
+                final RelationshipType[] types, final Direction[] directions,
+                final Set<Long> visited, final AtomicInteger budget,
+                final FanOutLimit fanOut,
+                final Collection<FanOutPlaceholder> truncated,
+                final CancellationToken token )
+        {
+            this.graphDb = graphDb;
+            this.ids = ids;
+            this.types = types;
+            this.directions = directions;
+            this.visited = visited;
+            this.budget = budget;
+            this.fanOut = fanOut;
+            this.truncated = truncated;
+            this.token = token;
+        }
+    }
+
+    @Override
+    public List<List<Node>> getLevels( final Node node,
+            final Collection<? extends DirectedRelationship> directedRels,
+            final int depth, final int nodeLimit, final FanOutLimit fanOut,
+            final Collection<FanOutPlaceholder> truncated,
+            final GraphDbServiceManager gsm, final CancellationToken token )
+    {
+        if ( directedRels.isEmpty() || gsm.isRemote()
+             || gsm.hasPendingChanges() )
+        {
+            return super.getLevels( node, directedRels, depth, nodeLimit,
+                    fanOut, truncated, gsm, token );
+        }
+        setRelationshipTypes( directedRels );
+        RelationshipType[] types = getTypes( directedRels );
+        Direction[] directions = getDirections( directedRels );
+        GraphDatabaseService graphDb = node.getGraphDatabase();
+        Set<Long> visited = Collections.newSetFromMap( new ConcurrentHashMap<Long, Boolean>() );
+        // the start node takes the first place
+        AtomicInteger budget = new AtomicInteger( nodeLimit - 1 );
+        // the workers add placeholders concurrently
+        Collection<FanOutPlaceholder> placeholders = new ConcurrentLinkedQueue<FanOutPlaceholder>();
+        List<long[]> idLevels = new ArrayList<long[]>();
+        List<List<Node>> levels = new ArrayList<List<Node>>();
+        try
+        {
+            visited.add( node.getId() );
+            long[] ids = new long[] { node.getId() };
+            idLevels.add( ids );
+            for ( int level = 0; level < depth && budget.get() > 0
+                                 && !token.isCancelled(); level++ )
+            {
+                ExpandTask task = new ExpandTask( new Level( graphDb, ids,
+                        types, directions, visited, budget, fanOut, placeholders,
+                        token ), 0,
+                        ids.length );
+                // small levels aren't worth handing over to the pool
+                LongArrayList next = ids.length > CHUNK_SIZE ? POOL.invoke( task )
+                        : task.compute();
+                if ( next.isEmpty() )
+                {
+                    break;
+                }
+                ids = next.toArray();
+                idLevels.add( ids );
+            }
+            for ( long[] levelIds : idLevels )
+            {
+                List<Node> nodes = new ArrayList<Node>( levelIds.length );
+                for ( long id : levelIds )
+                {
+                    nodes.add( graphDb.getNodeById( id ) );
+                }
+                levels.add( nodes );
+            }
+            truncated.addAll( placeholders );
+        }
+        catch ( NotFoundException nfe )
+        {
+            // the start node has been removed, like in DefaultTraverser
+            levels.clear();
+        }
+        return levels;
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.neoclipse.graphdb;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed size thread pool that starts queued tasks by {@link TaskPriority},
+ * and in submission order within the same priority.
+ */
+class PriorityExecutor extends ThreadPoolExecutor
+{
+    private final AtomicLong sequence = new AtomicLong();
+
+    private class PriorityTask<T> extends FutureTask<T> implements
+            Comparable<PriorityTask<?>>
+    {
+        private final TaskPriority priority;
+        private final long order = sequence.getAndIncrement();
+
+        public PriorityTask( final Callable<T> callable,
+                final TaskPriority priority )
+        {
+            super( callable );
+            this.priority = priority;
+        }
+
+        public PriorityTask( final Runnable runnable, final T result,
+                final TaskPriority priority )
+        {
+            super( runnable, result );
+            this.priority = priority;
+        }
+
+        @Override
+        public int compareTo( final PriorityTask<?> other )
+        {
+            int diff = priority.compareTo( other.priority );
+            if ( diff != 0 )
+            {
+                return diff;
+            }
+            return order < other.order ? -1 : ( order == other.order ? 0 : 1 );
+        }
+    }
+
+    public PriorityExecutor( final int threads, final ThreadFactory threadFactory )
+    {
+        super( threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(), threadFactory );
+    }
+
+    /**
+     * Submit a task with the given priority.
+     * 
+     * @param task the task
+     * @param priority decides when it's started
+     * @return
+     */
+    public <T> Future<T> submit( final Callable<T> task,
+            final TaskPriority priority )
+    {
+        PriorityTask<T> future = new PriorityTask<T>( task, priority );
+        execute( future );
+        return future;
+    }
+
+    @Override
+    protected <T> FutureTask<T> newTaskFor( final Callable<T> callable )
+    {
+        return new PriorityTask<T>( callable, TaskPriority.NORMAL );
+    }
+
+    @Override
+    protected <T> FutureTask<T> newTaskFor( final Runnable runnable,
+            final T value )
+    {
+        return new PriorityTask<T>( runnable, value, TaskPriority.NORMAL );
+    }
+}
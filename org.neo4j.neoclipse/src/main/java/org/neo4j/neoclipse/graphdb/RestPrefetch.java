@@ -0,0 +1,312 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.neoclipse.graphdb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.neoclipse.graphdb.NeighbourhoodSnapshot.ColorKey;
+import org.neo4j.neoclipse.reltype.DirectedRelationship;
+import org.neo4j.rest.graphdb.RestGraphDatabase;
+import org.neo4j.rest.graphdb.query.RestCypherQueryEngine;
+
+/**
+ * Reads what the graph view needs about a set of nodes from a remote database
+ * in a few Cypher queries, instead of one request for each node and
+ * relationship. The entities returned come with their properties, so reading
+ * those doesn't go back to the server either. Has to be used from inside a
+ * graph task.
+ */
+public class RestPrefetch
+{
+    private static final String NODES_STATEMENT = "START n=node({ids}) RETURN id(n) AS id, n AS node";
+    private static final String RELATIONSHIPS_STATEMENT = "START n=node({from}), m=node({to}) MATCH (n)-[r]-(m) "
+                                                          + "WHERE type(r) IN {types} "
+                                                          + "RETURN DISTINCT r AS rel, id(startNode(r)) AS start, id(endNode(r)) AS end";
+    private static final String NEIGHBOURS_STATEMENT = "START n=node({ids}) MATCH (n)-[r]-(m) "
+                                                       + "WHERE type(r) IN {types} "
+                                                       + "RETURN id(n) AS from, type(r) AS type, startNode(r) = n AS outgoing, "
+                                                       + "id(m) AS id, m AS node";
+    private static final String TYPES_STATEMENT = "START n=node({ids}) MATCH (n)-[r]-() "
+                                                  + "RETURN DISTINCT id(n) AS id, type(r) AS type, startNode(r) = n AS outgoing";
+
+    /**
+     * A relationship with the ids of its nodes.
+     */
+    public static class Row
+    {
+        private final Relationship rel;
+        private final long startId;
+        private final long endId;
+
+        Row( final Relationship rel, final long startId, final long endId )
+        {
+            this.rel = rel;
+            this.startId = startId;
+            this.endId = endId;
+        }
+
+        public Relationship getRelationship()
+        {
+            return rel;
+        }
+
+        public long getStartId()
+        {
+            return startId;
+        }
+
+        public long getEndId()
+        {
+            return endId;
+        }
+    }
+
+    private final RestCypherQueryEngine engine;
+
+    /**
+     * Create a prefetch for a database.
+     * 
+     * @param graphDb has to be a remote database
+     */
+    public RestPrefetch( final GraphDatabaseService graphDb )
+    {
+        engine = new RestCypherQueryEngine(
+                ( (RestGraphDatabase) graphDb ).getRestAPI() );
+    }
+
+    /**
+     * Load nodes together with their properties.
+     * 
+     * @param ids ids of the nodes
+     * @return the nodes by id
+     */
+    public Map<Long, Node> getNodes( final Collection<Long> ids )
+    {
+        Map<Long, Node> nodes = new HashMap<Long, Node>();
+        if ( ids.isEmpty() )
+        {
+            return nodes;
+        }
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put( "ids", new ArrayList<Long>( ids ) );
+        for ( Map<String, Object> row : engine.query( NODES_STATEMENT, params ) )
+        {
+            nodes.put( getId( row, "id" ), (Node) row.get( "node" ) );
+        }
+        return nodes;
+    }
+
+    /**
+     * Load the relationships between two sets of nodes, in either direction,
+     * together with their properties.
+     * 
+     * @param from ids of the nodes on one side
+     * @param to ids of the nodes on the other side
+     * @param typeNames names of the relationship types to load
+     * @return the relationships with the ids of their nodes
+     */
+    public List<Row> getRelationships( final Collection<Long> from,
+            final Collection<Long> to, final Collection<String> typeNames )
+    {
+        List<Row> rels = new ArrayList<Row>();
+        if ( from.isEmpty() || to.isEmpty() || typeNames.isEmpty() )
+        {
+            return rels;
+        }
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put( "from", new ArrayList<Long>( from ) );
+        params.put( "to", new ArrayList<Long>( to ) );
+        params.put( "types", new ArrayList<String>( typeNames ) );
+        for ( Map<String, Object> row : engine.query( RELATIONSHIPS_STATEMENT,
+                params ) )
+        {
+            rels.add( new Row( (Relationship) row.get( "rel" ), getId( row,
+                    "start" ), getId( row, "end" ) ) );
+        }
+        return rels;
+    }
+
+    /**
+     * Find the nodes one hop further out from a level in one query, like
+     * {@link TraversalStrategy#getNextLevel}. The relationships of each node
+     * beyond the fan-out limit are left out and counted in placeholders. The
+     * nodes come with their properties.
+     * 
+     * @param level the nodes to go out from
+     * @param directedRels relationship types and direction filters
+     * @param known nodes to leave out
+     * @param nodeLimit maximum number of nodes to return
+     * @param fanOut relationships to follow per node, type and direction
+     * @param truncated gets the placeholders
+     * @return the new nodes, in the order of the level and the filters
+     */
+    public List<Node> getNextLevel( final Collection<Node> level,
+            final Collection<? extends DirectedRelationship> directedRels,
+            final NeighbourhoodSnapshot known, final int nodeLimit,
+            final FanOutLimit fanOut,
+            final Collection<FanOutPlaceholder> truncated )
+    {
+        List<Node> next = new ArrayList<Node>();
+        if ( level.isEmpty() || directedRels.isEmpty() )
+        {
+            return next;
+        }
+        Map<String, Object> params = new HashMap<String, Object>();
+        List<Long> ids = new ArrayList<Long>( level.size() );
+        for ( Node node : level )
+        {
+            ids.add( node.getId() );
+        }
+        List<String> typeNames = new ArrayList<String>();
+        for ( DirectedRelationship directedRel : directedRels )
+        {
+            typeNames.add( directedRel.getRelType().name() );
+        }
+        params.put( "ids", ids );
+        params.put( "types", typeNames );
+        // rows by node id and type name
+        Map<Long, Map<String, List<Map<String, Object>>>> rows = new HashMap<Long, Map<String, List<Map<String, Object>>>>();
+        for ( Map<String, Object> row : engine.query( NEIGHBOURS_STATEMENT,
+                params ) )
+        {
+            long from = getId( row, "from" );
+            Map<String, List<Map<String, Object>>> byType = rows.get( from );
+            if ( byType == null )
+            {
+                byType = new HashMap<String, List<Map<String, Object>>>();
+                rows.put( from, byType );
+            }
+            String typeName = (String) row.get( "type" );
+            List<Map<String, Object>> typeRows = byType.get( typeName );
+            if ( typeRows == null )
+            {
+                typeRows = new ArrayList<Map<String, Object>>();
+                byType.put( typeName, typeRows );
+            }
+            typeRows.add( row );
+        }
+        Set<Long> found = new HashSet<Long>();
+        for ( long from : ids )
+        {
+            Map<String, List<Map<String, Object>>> byType = rows.get( from );
+            if ( byType == null )
+            {
+                continue;
+            }
+            for ( DirectedRelationship directedRel : directedRels )
+            {
+                String typeName = directedRel.getRelType().name();
+                Direction direction = NeighbourhoodSnapshot.getDirection( directedRel );
+                List<Map<String, Object>> typeRows = byType.get( typeName );
+                if ( typeRows == null )
+                {
+                    continue;
+                }
+                int max = fanOut.getLimit( from, typeName, direction );
+                int followed = 0;
+                int hidden = 0;
+                for ( Map<String, Object> row : typeRows )
+                {
+                    boolean outgoing = Boolean.TRUE.equals( row.get( "outgoing" ) );
+                    if ( ( direction == Direction.OUTGOING && !outgoing )
+                         || ( direction == Direction.INCOMING && outgoing ) )
+                    {
+                        continue;
+                    }
+                    if ( followed >= max )
+                    {
+                        hidden++;
+                        continue;
+                    }
+                    followed++;
+                    Node other = (Node) row.get( "node" );
+                    if ( known.contains( other ) || !found.add( other.getId() ) )
+                    {
+                        continue;
+                    }
+                    if ( next.size() >= nodeLimit )
+                    {
+                        return next;
+                    }
+                    next.add( other );
+                }
+                if ( hidden > 0 )
+                {
+                    truncated.add( new FanOutPlaceholder( from, typeName,
+                            direction, hidden ) );
+                }
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Find the relationship types and directions each node has
+     * relationships of, the input to
+     * {@link org.neo4j.neoclipse.decorate.SimpleGraphDecorator#chooseColorKey(List)}
+     * .
+     * 
+     * @param ids ids of the nodes
+     * @return the types and directions by node id, with outgoing and incoming
+     *         as directions
+     */
+    public Map<Long, List<ColorKey>> getRelationshipTypes(
+            final Collection<Long> ids )
+    {
+        Map<Long, List<ColorKey>> types = new HashMap<Long, List<ColorKey>>();
+        if ( ids.isEmpty() )
+        {
+            return types;
+        }
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put( "ids", new ArrayList<Long>( ids ) );
+        for ( Map<String, Object> row : engine.query( TYPES_STATEMENT, params ) )
+        {
+            long id = getId( row, "id" );
+            List<ColorKey> keys = types.get( id );
+            if ( keys == null )
+            {
+                keys = new ArrayList<ColorKey>();
+                types.put( id, keys );
+            }
+            keys.add( new ColorKey(
+                    DynamicRelationshipType.withName( (String) row.get( "type" ) ),
+                    Boolean.TRUE.equals( row.get( "outgoing" ) ) ? Direction.OUTGOING
+                            : Direction.INCOMING ) );
+        }
+        return types;
+    }
+
+    private static long getId( final Map<String, Object> row,
+            final String column )
+    {
+        return ( (Number) row.get( column ) ).longValue();
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.neoclipse.graphdb;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+
+/**
+ * Finds a node to start browsing from without scanning the whole store each
+ * time. The last node found is remembered and only checked again, otherwise a
+ * bounded range of low ids is probed. The node is forgotten whenever changes
+ * are committed or rolled back and when the database changes.
+ */
+class StartNodeResolver implements GraphDbServiceEventListener
+{
+    private static final long NONE = -1;
+    /**
+     * Number of ids to probe in an embedded database.
+     */
+    private static final int LOCAL_PROBE_RANGE = 1000;
+    /**
+     * Number of ids to probe over REST, where every probe is a round trip.
+     */
+    private static final int REMOTE_PROBE_RANGE = 10;
+    private volatile long lastId = NONE;
+    private volatile boolean lastHadRelationships = false;
+
+    /**
+     * Create a task that looks for a start node among the remembered node and
+     * the low ids. It returns <code>null</code> when nothing with
+     * relationships was found, and then the store has to be scanned.
+     * 
+     * @param remote <code>true</code> for a REST connection
+     * @return task to run on a read lane
+     */
+    GraphCallable<Node> probe( final boolean remote )
+    {
+        final int range = remote ? REMOTE_PROBE_RANGE : LOCAL_PROBE_RANGE;
+        return new GraphCallable<Node>()
+        {
+            @Override
+            public Node call( final GraphDatabaseService graphDb )
+            {
+                long id = lastId;
+                if ( id != NONE )
+                {
+                    Node node = getNode( graphDb, id );
+                    if ( node != null
+                         && ( !lastHadRelationships || node.hasRelationship() ) )
+                    {
+                        return node;
+                    }
+                    lastId = NONE;
+                }
+                for ( long probeId = 0; probeId < range; probeId++ )
+                {
+                    Node node = getNode( graphDb, probeId );
+                    if ( node != null && node.hasRelationship() )
+                    {
+                        remember( probeId, true );
+                        return node;
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Remember a node found by scanning the store.
+     * 
+     * @param id node id
+     * @param hasRelationships if the node had relationships
+     */
+    void remember( final long id, final boolean hasRelationships )
+    {
+        lastHadRelationships = hasRelationships;
+        lastId = id;
+    }
+
+    private static Node getNode( final GraphDatabaseService graphDb,
+            final long id )
+    {
+        try
+        {
+            return graphDb.getNodeById( id );
+        }
+        catch ( NotFoundException e )
+        {
+            return null;
+        }
+    }
+
+    @Override
+    public void serviceChanged( final GraphDbServiceEvent event )
+    {
+        switch ( event.getStatus() )
+        {
+        case COMMIT:
+        case ROLLBACK:
+        case STARTED:
+        case STOPPED:
+            lastId = NONE;
+            break;
+        default:
+            break;
+        }
+    }
+}
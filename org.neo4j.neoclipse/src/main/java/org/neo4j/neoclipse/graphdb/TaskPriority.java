@@ -0,0 +1,39 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.neoclipse.graphdb;
+
+/**
+ * How urgently a read task should run. Queued tasks with a higher priority
+ * are started before those with a lower one.
+ */
+public enum TaskPriority
+{
+    /**
+     * Needed to paint or update what the user is looking at right now.
+     */
+    INTERACTIVE,
+    /**
+     * Default priority.
+     */
+    NORMAL,
+    /**
+     * Long running work like exports and searches over the whole database.
+     */
+    BULK
+}
@@ -19,6 +19,8 @@
 package org.neo4j.neoclipse.graphdb;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
@@ -26,9 +28,33 @@ import org.neo4j.neoclipse.reltype.DirectedRelationship;
 
 public interface TraversalStrategy
 {
-    Collection<Node> getNodes( Node node,
+    /**
+     * Get the nodes around a node by breadth-first level, the node itself
+     * being level 0. Stops early, returning what was found so far, when the
+     * node limit is reached or the token is cancelled. Relationships beyond
+     * the fan-out limit of a node are left out and stand in the truncated
+     * placeholders instead.
+     */
+    List<List<Node>> getLevels( Node node,
             Collection<? extends DirectedRelationship> directedRels, int depth,
-            int nodeLimit, GraphDbServiceManager gsm );
+            int nodeLimit, FanOutLimit fanOut,
+            Collection<FanOutPlaceholder> truncated, GraphDbServiceManager gsm,
+            CancellationToken token );
+
+    /**
+     * Get the nodes one hop further out from a level, leaving out the nodes
+     * that are already known and the relationships beyond the fan-out limit.
+     */
+    List<Node> getNextLevel( Collection<Node> level,
+            Collection<? extends DirectedRelationship> directedRels,
+            NeighbourhoodSnapshot known, int nodeLimit, FanOutLimit fanOut,
+            Collection<FanOutPlaceholder> truncated, CancellationToken token );
 
     Collection<Relationship> getRelationships( Node start, Node end );
+
+    /**
+     * Get the outgoing relationships of the last traversed types from a node
+     * in one pass, by the id of their end node.
+     */
+    Map<Long, List<Relationship>> getOutgoingRelationships( Node start );
 }
@@ -0,0 +1,128 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.neoclipse.perf;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations. Values are counted in buckets of
+ * powers of two microseconds, so percentiles are accurate within a factor
+ * of two, which is enough to tell a slow database from a slow queue.
+ */
+public class LatencyHistogram
+{
+    private static final int BUCKETS = 40;
+    private final AtomicLongArray buckets = new AtomicLongArray( BUCKETS );
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Record a duration.
+     * 
+     * @param nanos the duration in nanoseconds
+     */
+    public void record( final long nanos )
+    {
+        long micros = Math.max( 0, nanos / 1000 );
+        int bucket = Math.min( BUCKETS - 1, 64 - Long.numberOfLeadingZeros( micros ) );
+        buckets.incrementAndGet( bucket );
+        count.incrementAndGet();
+        totalMicros.addAndGet( micros );
+        long max = maxMicros.get();
+        while ( micros > max && !maxMicros.compareAndSet( max, micros ) )
+        {
+            max = maxMicros.get();
+        }
+    }
+
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    /**
+     * Get the mean duration.
+     * 
+     * @return mean in microseconds
+     */
+    public long getMeanMicros()
+    {
+        long n = count.get();
+        return n == 0 ? 0 : totalMicros.get() / n;
+    }
+
+    /**
+     * Get the longest duration.
+     * 
+     * @return max in microseconds
+     */
+    public long getMaxMicros()
+    {
+        return maxMicros.get();
+    }
+
+    /**
+     * Get an upper bound of a percentile.
+     * 
+     * @param percentile between 0 and 100
+     * @return the duration in microseconds
+     */
+    public long getPercentileMicros( final double percentile )
+    {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for ( int i = 0; i < BUCKETS; i++ )
+        {
+            counts[i] = buckets.get( i );
+            total += counts[i];
+        }
+        if ( total == 0 )
+        {
+            return 0;
+        }
+        long rank = (long) Math.ceil( total * percentile / 100.0 );
+        long seen = 0;
+        for ( int i = 0; i < BUCKETS; i++ )
+        {
+            seen += counts[i];
+            if ( seen >= rank )
+            {
+                // bucket i holds values below 2^i microseconds
+                return Math.min( 1L << i, getMaxMicros() );
+            }
+        }
+        return getMaxMicros();
+    }
+
+    /**
+     * Forget all recorded durations.
+     */
+    public void reset()
+    {
+        for ( int i = 0; i < BUCKETS; i++ )
+        {
+            buckets.set( i, 0 );
+        }
+        count.set( 0 );
+        totalMicros.set( 0 );
+        maxMicros.set( 0 );
+    }
+}
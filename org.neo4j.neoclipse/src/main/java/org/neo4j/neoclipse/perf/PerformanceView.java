@@ -0,0 +1,225 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.neoclipse.perf;
+
+import java.io.File;
+
+import org.eclipse.jface.action.Action;
+import org.eclipse.jface.action.IToolBarManager;
+import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.viewers.ITableLabelProvider;
+import org.eclipse.jface.viewers.LabelProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
+import org.eclipse.ui.part.ViewPart;
+import org.neo4j.neoclipse.Activator;
+import org.neo4j.neoclipse.action.Actions;
+import org.neo4j.neoclipse.graphdb.TaskPriority;
+import org.neo4j.neoclipse.perf.TaskStatistics.LabelStatistics;
+import org.neo4j.neoclipse.util.DataExportUtils;
+import org.neo4j.neoclipse.view.ErrorMessage;
+
+/**
+ * Shows how many graph tasks of each kind have run, how long they waited in
+ * the queue and how long they took. Use it to find out if a slow session is
+ * caused by the database, the task backlog or the UI.
+ */
+public class PerformanceView extends ViewPart
+{
+    public static final String ID = "org.neo4j.neoclipse.perf.PerformanceView";
+    private static final int REFRESH_INTERVAL = 1000;
+    /**
+     * Queue wait that interactive reads should stay under at the 95th
+     * percentile, also while bulk work like an export is running.
+     */
+    private static final long INTERACTIVE_WAIT_TARGET_MICROS = 5000;
+    private static final String[] COLUMNS = { "Task", "Count", "Failures",
+        "Wait p50 (ms)", "Wait p95 (ms)", "Wait p99 (ms)", "Wait max (ms)",
+        "Run p50 (ms)", "Run p95 (ms)", "Run p99 (ms)", "Run max (ms)" };
+    private TableViewer viewer;
+
+    private static class StatisticsLabelProvider extends LabelProvider
+            implements ITableLabelProvider
+    {
+        @Override
+        public Image getColumnImage( final Object element, final int index )
+        {
+            return null;
+        }
+
+        @Override
+        public String getColumnText( final Object element, final int index )
+        {
+            LabelStatistics stats = (LabelStatistics) element;
+            switch ( index )
+            {
+            case 0:
+                return stats.getLabel();
+            case 1:
+                return String.valueOf( stats.getCount() );
+            case 2:
+                return String.valueOf( stats.getFailures() );
+            case 3:
+                return TaskStatistics.toMillis( stats.getWait().getPercentileMicros( 50 ) );
+            case 4:
+                return TaskStatistics.toMillis( stats.getWait().getPercentileMicros( 95 ) );
+            case 5:
+                return TaskStatistics.toMillis( stats.getWait().getPercentileMicros( 99 ) );
+            case 6:
+                return TaskStatistics.toMillis( stats.getWait().getMaxMicros() );
+            case 7:
+                return TaskStatistics.toMillis( stats.getRun().getPercentileMicros( 50 ) );
+            case 8:
+                return TaskStatistics.toMillis( stats.getRun().getPercentileMicros( 95 ) );
+            case 9:
+                return TaskStatistics.toMillis( stats.getRun().getPercentileMicros( 99 ) );
+            case 10:
+                return TaskStatistics.toMillis( stats.getRun().getMaxMicros() );
+            default:
+                return "";
+            }
+        }
+    }
+
+    @Override
+    public void createPartControl( final Composite parent )
+    {
+        viewer = new TableViewer( parent, SWT.SINGLE | SWT.FULL_SELECTION
+                                          | SWT.H_SCROLL | SWT.V_SCROLL );
+        Table table = viewer.getTable();
+        table.setHeaderVisible( true );
+        table.setLinesVisible( true );
+        for ( int i = 0; i < COLUMNS.length; i++ )
+        {
+            TableColumn column = new TableColumn( table, i == 0 ? SWT.LEFT
+                    : SWT.RIGHT );
+            column.setText( COLUMNS[i] );
+            column.setWidth( i == 0 ? 220 : 90 );
+        }
+        viewer.setContentProvider( new ArrayContentProvider() );
+        viewer.setLabelProvider( new StatisticsLabelProvider() );
+        fillToolBar( getViewSite().getActionBars().getToolBarManager() );
+        refresh();
+        scheduleRefresh();
+    }
+
+    private void fillToolBar( final IToolBarManager manager )
+    {
+        Action refreshAction = new Action()
+        {
+            @Override
+            public void run()
+            {
+                refresh();
+            }
+        };
+        Actions.REFRESH.initialize( refreshAction );
+        manager.add( refreshAction );
+
+        Action resetAction = new Action()
+        {
+            @Override
+            public void run()
+            {
+                getStatistics().reset();
+                refresh();
+            }
+        };
+        Actions.RESET_STATISTICS.initialize( resetAction );
+        manager.add( resetAction );
+
+        Action exportAction = new Action()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    File file = DataExportUtils.exportTaskStatistics( getStatistics().toCsv() );
+                    ErrorMessage.showDialog( "Statistics export", "CSV file is created at " + file );
+                }
+                catch ( Exception e )
+                {
+                    ErrorMessage.showDialog( "Statistics exporting problem", e );
+                }
+            }
+        };
+        Actions.EXPORT_STATISTICS.initialize( exportAction );
+        manager.add( exportAction );
+    }
+
+    private TaskStatistics getStatistics()
+    {
+        return Activator.getDefault().getGraphDbServiceManager().getTaskStatistics();
+    }
+
+    private void refresh()
+    {
+        if ( viewer.getControl().isDisposed() )
+        {
+            return;
+        }
+        viewer.setInput( getStatistics().getLabelStatistics() );
+        setContentDescription( getInteractiveWaitSummary() );
+    }
+
+    /**
+     * Check the queue wait of interactive reads against its target.
+     */
+    private String getInteractiveWaitSummary()
+    {
+        LabelStatistics interactive = getStatistics().getLabelStatistics(
+                TaskStatistics.getPriorityLabel( TaskPriority.INTERACTIVE.name() ) );
+        if ( interactive == null || interactive.getCount() == 0 )
+        {
+            return "No interactive reads recorded yet.";
+        }
+        long p95 = interactive.getWait().getPercentileMicros( 95 );
+        return "Interactive read queue wait p95: " + TaskStatistics.toMillis( p95 ) + " ms, "
+               + ( p95 <= INTERACTIVE_WAIT_TARGET_MICROS ? "within" : "above" ) + " the "
+               + TaskStatistics.toMillis( INTERACTIVE_WAIT_TARGET_MICROS ) + " ms target.";
+    }
+
+    private void scheduleRefresh()
+    {
+        viewer.getControl().getDisplay().timerExec( REFRESH_INTERVAL, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if ( viewer.getControl().isDisposed() )
+                {
+                    return;
+                }
+                refresh();
+                scheduleRefresh();
+            }
+        } );
+    }
+
+    @Override
+    public void setFocus()
+    {
+        viewer.getControl().setFocus();
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.neoclipse.perf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts, queue wait and execution times of graph tasks, per task label.
+ */
+public class TaskStatistics
+{
+    /**
+     * Statistics for one task label.
+     */
+    public static class LabelStatistics
+    {
+        private final String label;
+        private final AtomicLong failures = new AtomicLong();
+        private final LatencyHistogram wait = new LatencyHistogram();
+        private final LatencyHistogram run = new LatencyHistogram();
+
+        public LabelStatistics( final String label )
+        {
+            this.label = label;
+        }
+
+        public String getLabel()
+        {
+            return label;
+        }
+
+        public long getCount()
+        {
+            return run.getCount();
+        }
+
+        public long getFailures()
+        {
+            return failures.get();
+        }
+
+        /**
+         * Time from submission until the task started.
+         */
+        public LatencyHistogram getWait()
+        {
+            return wait;
+        }
+
+        /**
+         * Time the task took to run.
+         */
+        public LatencyHistogram getRun()
+        {
+            return run;
+        }
+
+        private void reset()
+        {
+            failures.set( 0 );
+            wait.reset();
+            run.reset();
+        }
+    }
+
+    private static final String CSV_HEADER = "task,count,failures,"
+                                             + "wait mean ms,wait p50 ms,wait p95 ms,wait p99 ms,wait max ms,"
+                                             + "run mean ms,run p50 ms,run p95 ms,run p99 ms,run max ms";
+    private final ConcurrentMap<String, LabelStatistics> labels = new ConcurrentHashMap<String, LabelStatistics>();
+
+    /**
+     * Record a finished task.
+     * 
+     * @param label the task label
+     * @param waitNanos time spent queued
+     * @param runNanos time spent running
+     * @param failed true if the task threw
+     */
+    public void record( final String label, final long waitNanos, final long runNanos, final boolean failed )
+    {
+        LabelStatistics stats = labels.get( label );
+        if ( stats == null )
+        {
+            LabelStatistics created = new LabelStatistics( label );
+            stats = labels.putIfAbsent( label, created );
+            if ( stats == null )
+            {
+                stats = created;
+            }
+        }
+        stats.wait.record( waitNanos );
+        stats.run.record( runNanos );
+        if ( failed )
+        {
+            stats.failures.incrementAndGet();
+        }
+    }
+
+    /**
+     * Get the label under which all read pool tasks of a priority are
+     * recorded, besides their own label.
+     * 
+     * @param priority name of the priority
+     * @return the label
+     */
+    public static String getPriorityLabel( final String priority )
+    {
+        return "[" + priority.toLowerCase( Locale.ROOT ) + " reads]";
+    }
+
+    /**
+     * Get the statistics of one label.
+     * 
+     * @param label the task label
+     * @return the statistics, null if no such task has run
+     */
+    public LabelStatistics getLabelStatistics( final String label )
+    {
+        return labels.get( label );
+    }
+
+    /**
+     * Get the statistics of all labels, the most time consuming first.
+     * 
+     * @return statistics per label
+     */
+    public List<LabelStatistics> getLabelStatistics()
+    {
+        List<LabelStatistics> list = new ArrayList<LabelStatistics>( labels.values() );
+        Collections.sort( list, new Comparator<LabelStatistics>()
+        {
+            @Override
+            public int compare( final LabelStatistics a, final LabelStatistics b )
+            {
+                long totalA = a.getRun().getMeanMicros() * a.getCount();
+                long totalB = b.getRun().getMeanMicros() * b.getCount();
+                return totalA > totalB ? -1 : ( totalA == totalB ? 0 : 1 );
+            }
+        } );
+        return list;
+    }
+
+    /**
+     * Forget everything recorded so far.
+     */
+    public void reset()
+    {
+        for ( LabelStatistics stats : labels.values() )
+        {
+            stats.reset();
+        }
+    }
+
+    /**
+     * Format the statistics as comma separated values, one line per label.
+     * 
+     * @return CSV text with a header line
+     */
+    public String toCsv()
+    {
+        StringBuilder csv = new StringBuilder( CSV_HEADER ).append( '\n' );
+        for ( LabelStatistics stats : getLabelStatistics() )
+        {
+            csv.append( '"' ).append( stats.getLabel().replace( "\"", "\"\"" ) ).append( '"' );
+            csv.append( ',' ).append( stats.getCount() );
+            csv.append( ',' ).append( stats.getFailures() );
+            appendHistogram( csv, stats.getWait() );
+            appendHistogram( csv, stats.getRun() );
+            csv.append( '\n' );
+        }
+        return csv.toString();
+    }
+
+    private void appendHistogram( final StringBuilder csv, final LatencyHistogram histogram )
+    {
+        csv.append( ',' ).append( toMillis( histogram.getMeanMicros() ) );
+        csv.append( ',' ).append( toMillis( histogram.getPercentileMicros( 50 ) ) );
+        csv.append( ',' ).append( toMillis( histogram.getPercentileMicros( 95 ) ) );
+        csv.append( ',' ).append( toMillis( histogram.getPercentileMicros( 99 ) ) );
+        csv.append( ',' ).append( toMillis( histogram.getMaxMicros() ) );
+    }
+
+    /**
+     * Format microseconds as milliseconds.
+     * 
+     * @param micros the duration
+     * @return milliseconds with three decimals
+     */
+    public static String toMillis( final long micros )
+    {
+        return String.format( Locale.ROOT, "%.3f", micros / 1000.0 );
+    }
+}
@@ -23,6 +23,7 @@ import org.eclipse.ui.IPageLayout;
 import org.eclipse.ui.IPerspectiveFactory;
 import org.neo4j.neoclipse.connection.ConnectionsView;
 import org.neo4j.neoclipse.editor.SqlEditorView;
+import org.neo4j.neoclipse.perf.PerformanceView;
 import org.neo4j.neoclipse.reltype.RelationshipTypeView;
 import org.neo4j.neoclipse.view.NeoGraphViewPart;
 
@@ -61,6 +62,7 @@ public class NeoPerspectiveFactory implements IPerspectiveFactory
         // properties view
         IFolderLayout props = layout.createFolder( PROPERTIES_AREA, IPageLayout.BOTTOM, 0.75f, GRAPH_AREA );
         props.addView( IPageLayout.ID_PROP_SHEET );
+        props.addPlaceholder( PerformanceView.ID );
         // relationship types view
         IFolderLayout types = layout.createFolder( "typesArea", IPageLayout.RIGHT, 0.55f, PROPERTIES_AREA );
         types.addView( RelationshipTypeView.ID );
@@ -74,5 +76,6 @@ public class NeoPerspectiveFactory implements IPerspectiveFactory
         layout.addShowViewShortcut( IPageLayout.ID_PROP_SHEET );
         layout.addShowViewShortcut( RelationshipTypeView.ID );
         layout.addShowViewShortcut( ConnectionsView.ID );
+        layout.addShowViewShortcut( PerformanceView.ID );
     }
 }
@@ -22,6 +22,7 @@ import org.eclipse.core.runtime.preferences.AbstractPreferenceInitializer;
 import org.eclipse.jface.preference.IPreferenceStore;
 import org.neo4j.neoclipse.Activator;
 import org.neo4j.neoclipse.graphdb.GraphDbServiceMode;
+import org.neo4j.neoclipse.graphdb.NodePriority;
 
 /**
  * Initializes neo4j preferences with their default values.
@@ -44,7 +45,13 @@ public class PreferenceInitializer extends AbstractPreferenceInitializer
         pref.setDefault( Preferences.CONNECTION_MODE,
                 GraphDbServiceMode.READ_WRITE_EMBEDDED.name() );
         pref.setDefault( Preferences.MAX_NODES, 500 );
+        pref.setDefault( Preferences.MAX_RELATIONSHIPS, 2000 );
+        pref.setDefault( Preferences.MAX_FAN_OUT, 50 );
         pref.setDefault( Preferences.MAX_TRAVERSAL_DEPTH, 1 );
+        pref.setDefault( Preferences.PARALLEL_TRAVERSAL, false );
+        pref.setDefault( Preferences.TRAVERSAL_PRIORITY,
+                NodePriority.Mode.BREADTH_FIRST.name() );
+        pref.setDefault( Preferences.PRIORITY_PROPERTY, "" );
 
 
     }
@@ -21,7 +21,9 @@ package org.neo4j.neoclipse.preference;
 import org.eclipse.jface.preference.BooleanFieldEditor;
 import org.eclipse.jface.preference.IntegerFieldEditor;
 import org.eclipse.jface.preference.RadioGroupFieldEditor;
+import org.eclipse.jface.preference.StringFieldEditor;
 import org.neo4j.neoclipse.graphdb.GraphDbServiceMode;
+import org.neo4j.neoclipse.graphdb.NodePriority;
 
 /**
  * The page for neo4j preferences.
@@ -34,8 +36,13 @@ public class PreferencePage extends AbstractPreferencePage
 {
     private static final String NEO4J_CONNECTION_MODE = "Connection mode:";
     private static final String HELP_ON_START_LABEL = "Show help view on startup";
+    private static final String PARALLEL_TRAVERSAL_LABEL = "Traverse on several threads (embedded databases)";
+    private static final String TRAVERSAL_PRIORITY_LABEL = "Nodes to show first when there are too many:";
+    private static final String PRIORITY_PROPERTY_LABEL = "Numeric node property to rank by";
     private RadioGroupFieldEditor connectionMode;
     private IntegerFieldEditor maxNodesField;
+    private IntegerFieldEditor maxRelationshipsField;
+    private IntegerFieldEditor maxFanOutField;
     private IntegerFieldEditor maxTraversalDepthField;
 
     /**
@@ -67,9 +74,43 @@ public class PreferencePage extends AbstractPreferencePage
         maxNodesField.setEmptyStringAllowed( false );
         addField( maxNodesField );
 
+        maxRelationshipsField = new IntegerFieldEditor(
+                Preferences.MAX_RELATIONSHIPS,
+                "Maximum number of relationships", getFieldEditorParent(), 5 );
+        maxRelationshipsField.setEmptyStringAllowed( false );
+        addField( maxRelationshipsField );
+
+        maxFanOutField = new IntegerFieldEditor( Preferences.MAX_FAN_OUT,
+                "Maximum relationships per node and type (0 = no limit)",
+                getFieldEditorParent(), 5 );
+        maxFanOutField.setEmptyStringAllowed( false );
+        addField( maxFanOutField );
+
         maxTraversalDepthField = new IntegerFieldEditor( Preferences.MAX_TRAVERSAL_DEPTH, "Maximum Traversal Depth",
                 getFieldEditorParent(), 4 );
         maxTraversalDepthField.setEmptyStringAllowed( false );
         addField( maxTraversalDepthField );
+
+        BooleanFieldEditor parallelTraversal = new BooleanFieldEditor(
+                Preferences.PARALLEL_TRAVERSAL, PARALLEL_TRAVERSAL_LABEL,
+                getFieldEditorParent() );
+        addField( parallelTraversal );
+
+        String[][] priorities = {
+                { "in the order they are found",
+                        NodePriority.Mode.BREADTH_FIRST.name() },
+                { "most relationships", NodePriority.Mode.DEGREE.name() },
+                { "highest property value", NodePriority.Mode.PROPERTY.name() },
+                { "highest relationship type weight",
+                        NodePriority.Mode.TYPE_WEIGHT.name() } };
+        RadioGroupFieldEditor traversalPriority = new RadioGroupFieldEditor(
+                Preferences.TRAVERSAL_PRIORITY, TRAVERSAL_PRIORITY_LABEL, 1,
+                priorities, getFieldEditorParent() );
+        addField( traversalPriority );
+
+        StringFieldEditor priorityProperty = new StringFieldEditor(
+                Preferences.PRIORITY_PROPERTY, PRIORITY_PROPERTY_LABEL,
+                getFieldEditorParent() );
+        addField( priorityProperty );
     }
 }
@@ -53,6 +53,30 @@ public final class Preferences
      * Maximum number of nodes to show.
      */
     public static final String MAX_NODES = "maxNodes";
+    /**
+     * Maximum number of relationships to collect for the relationship based
+     * graph content.
+     */
+    public static final String MAX_RELATIONSHIPS = "maxRelationships";
+    /**
+     * Maximum number of relationships of one type and direction to follow
+     * from a node in the graph view, 0 for no limit.
+     */
+    public static final String MAX_FAN_OUT = "maxFanOut";
 
     public static final String MAX_TRAVERSAL_DEPTH = "maxTraversalDepth";
+    /**
+     * Expand the levels of a traversal on several threads, for embedded
+     * databases.
+     */
+    public static final String PARALLEL_TRAVERSAL = "parallelTraversal";
+    /**
+     * Which nodes to show first when a traversal finds more than the maximum
+     * number of nodes, the name of a node priority mode.
+     */
+    public static final String TRAVERSAL_PRIORITY = "traversalPriority";
+    /**
+     * Numeric node property to rank nodes by.
+     */
+    public static final String PRIORITY_PROPERTY = "priorityProperty";
 }
@@ -20,6 +20,7 @@ package org.neo4j.neoclipse.property;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.draw2d.ChangeEvent;
 import org.eclipse.draw2d.ChangeListener;
@@ -89,11 +90,23 @@ public class NeoPropertySheetPage extends PropertySheetPage implements
     private PropertyContainer containerSelection;
     private final List<ChangeListener> listeners = new ArrayList<ChangeListener>();
     private AddNodeLabelAction addNodeLabelAction;
+    private final PropertySourceProvider propertySourceProvider;
+    private final PropertyEditBuffer editBuffer;
+    /**
+     * Containers of the latest selection.
+     */
+    private List<PropertyContainer> shownContainers = new ArrayList<PropertyContainer>();
+    /**
+     * Latest selection, used to drop outdated background loads.
+     */
+    private ISelection pendingSelection;
 
     public NeoPropertySheetPage()
     {
         super();
-        setPropertySourceProvider( new PropertySourceProvider( this ) );
+        propertySourceProvider = new PropertySourceProvider( this );
+        setPropertySourceProvider( propertySourceProvider );
+        editBuffer = new PropertyEditBuffer( this, propertySourceProvider );
     }
 
     public void addChangeListener( final ChangeListener listener )
@@ -105,6 +118,7 @@ public class NeoPropertySheetPage extends PropertySheetPage implements
             final boolean refresh )
     {
         // TODO make sure this key gets selected in the view
+        propertySourceProvider.invalidate( element );
         ChangeEvent ce = new ChangeEvent( element, key );
         for ( ChangeListener listener : listeners )
         {
@@ -123,11 +137,49 @@ public class NeoPropertySheetPage extends PropertySheetPage implements
             @Override
             public void run()
             {
-                refresh();
+                if ( shownContainers.isEmpty() )
+                {
+                    refresh();
+                    return;
+                }
+                propertySourceProvider.loadProperties( shownContainers,
+                        new Runnable()
+                        {
+                            @Override
+                            public void run()
+                            {
+                                if ( getControl() != null
+                                     && !getControl().isDisposed() )
+                                {
+                                    refresh();
+                                }
+                            }
+                        } );
             }
         } );
     }
 
+    /**
+     * Get the properties of a node or relationship in the sheet.
+     * 
+     * @param container the node or relationship
+     * @return property keys and values
+     */
+    Map<String, Object> getProperties( final PropertyContainer container )
+    {
+        return propertySourceProvider.getProperties( container );
+    }
+
+    /**
+     * Get the buffer that property edits from this sheet go through.
+     * 
+     * @return edit buffer
+     */
+    public PropertyEditBuffer getEditBuffer()
+    {
+        return editBuffer;
+    }
+
     public PropertyContainer getPropertyContainer()
     {
         return containerSelection;
@@ -317,6 +369,42 @@ public class NeoPropertySheetPage extends PropertySheetPage implements
     @Override
     public void selectionChanged( final IWorkbenchPart part,
             final ISelection selection )
+    {
+        pendingSelection = selection;
+        final List<PropertyContainer> containers = new ArrayList<PropertyContainer>();
+        if ( selection instanceof IStructuredSelection )
+        {
+            for ( Object element : ( (IStructuredSelection) selection ).toList() )
+            {
+                if ( element instanceof PropertyContainer )
+                {
+                    containers.add( (PropertyContainer) element );
+                }
+            }
+        }
+        shownContainers = containers;
+        if ( containers.isEmpty() )
+        {
+            showSelection( part, selection );
+            return;
+        }
+        // load the properties first, then let the sheet show them
+        propertySourceProvider.loadProperties( containers, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if ( selection == pendingSelection && getControl() != null
+                     && !getControl().isDisposed() )
+                {
+                    showSelection( part, selection );
+                }
+            }
+        } );
+    }
+
+    private void showSelection( final IWorkbenchPart part,
+            final ISelection selection )
     {
         super.selectionChanged( part, selection );
         if ( !( selection instanceof IStructuredSelection ) )
@@ -0,0 +1,228 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.neoclipse.property;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.neoclipse.Activator;
+import org.neo4j.neoclipse.graphdb.GraphCallable;
+import org.neo4j.neoclipse.graphdb.GraphCallback;
+import org.neo4j.neoclipse.view.UiHelper;
+
+/**
+ * Collects the property edits made through the property sheet and writes them
+ * in one task once the current interaction is over. Edits of the same key are
+ * merged, so only the last value of a key reaches the database.
+ */
+public class PropertyEditBuffer
+{
+    /**
+     * Value of a property that is to be removed.
+     */
+    private static final Object REMOVED = new Object();
+    private final NeoPropertySheetPage propertySheet;
+    private final PropertySourceProvider propertySourceProvider;
+    /**
+     * Pending edits by container, in the order they were made. Only touched
+     * from the display thread.
+     */
+    private Map<PropertyContainer, Map<String, Object>> pending = new LinkedHashMap<PropertyContainer, Map<String, Object>>();
+    private boolean flushScheduled = false;
+
+    PropertyEditBuffer( final NeoPropertySheetPage propertySheet,
+            final PropertySourceProvider propertySourceProvider )
+    {
+        this.propertySheet = propertySheet;
+        this.propertySourceProvider = propertySourceProvider;
+    }
+
+    /**
+     * Set a property value.
+     * 
+     * @param container node or relationship
+     * @param key property key
+     * @param value new value
+     */
+    public void setProperty( final PropertyContainer container,
+            final String key, final Object value )
+    {
+        edit( container, key, value );
+    }
+
+    /**
+     * Remove a property.
+     * 
+     * @param container node or relationship
+     * @param key property key
+     */
+    public void removeProperty( final PropertyContainer container,
+            final String key )
+    {
+        edit( container, key, REMOVED );
+    }
+
+    /**
+     * Move the value of a property to a new key.
+     * 
+     * @param container node or relationship
+     * @param key old key
+     * @param newKey new key
+     * @return <code>false</code> if there is no value to move
+     */
+    public boolean renameProperty( final PropertyContainer container,
+            final String key, final String newKey )
+    {
+        Object value = getProperty( container, key );
+        if ( value == null )
+        {
+            return false;
+        }
+        edit( container, key, REMOVED );
+        edit( container, newKey, value );
+        return true;
+    }
+
+    /**
+     * Check for a property, taking the pending edits into account.
+     * 
+     * @param container node or relationship
+     * @param key property key
+     * @return <code>true</code> if the property exists
+     */
+    public boolean hasProperty( final PropertyContainer container,
+            final String key )
+    {
+        return getProperty( container, key ) != null;
+    }
+
+    private Object getProperty( final PropertyContainer container,
+            final String key )
+    {
+        Map<String, Object> edits = pending.get( container );
+        if ( edits != null && edits.containsKey( key ) )
+        {
+            Object value = edits.get( key );
+            return value == REMOVED ? null : value;
+        }
+        return propertySourceProvider.getProperties( container ).get( key );
+    }
+
+    private void edit( final PropertyContainer container, final String key,
+            final Object value )
+    {
+        Map<String, Object> edits = pending.get( container );
+        if ( edits == null )
+        {
+            edits = new LinkedHashMap<String, Object>();
+            pending.put( container, edits );
+        }
+        // keep the latest edited key last
+        edits.remove( key );
+        edits.put( key, value );
+        // let the sheet show the new value right away
+        propertySourceProvider.update( container, key, value == REMOVED ? null
+                : value );
+        if ( !flushScheduled )
+        {
+            flushScheduled = true;
+            UiHelper.asyncExec( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    flush();
+                }
+            } );
+        }
+    }
+
+    /**
+     * Write the pending edits in a single task, then notify the listeners once
+     * per changed container and refresh the sheet.
+     */
+    private void flush()
+    {
+        flushScheduled = false;
+        final Map<PropertyContainer, Map<String, Object>> edits = pending;
+        pending = new LinkedHashMap<PropertyContainer, Map<String, Object>>();
+        if ( edits.isEmpty() )
+        {
+            return;
+        }
+        Activator.getDefault()
+                .getGraphDbServiceManager()
+                .submitWriteTask( new GraphCallable<Void>()
+                {
+                    @Override
+                    public Void call( final GraphDatabaseService graphDb )
+                    {
+                        for ( Entry<PropertyContainer, Map<String, Object>> entry : edits.entrySet() )
+                        {
+                            PropertyContainer container = entry.getKey();
+                            for ( Entry<String, Object> edit : entry.getValue()
+                                    .entrySet() )
+                            {
+                                if ( edit.getValue() != REMOVED )
+                                {
+                                    container.setProperty( edit.getKey(),
+                                            edit.getValue() );
+                                }
+                                else if ( container.hasProperty( edit.getKey() ) )
+                                {
+                                    container.removeProperty( edit.getKey() );
+                                }
+                            }
+                        }
+                        return null;
+                    }
+                }, new GraphCallback<Void>()
+                {
+                    @Override
+                    public void done( final Void result )
+                    {
+                        changed( edits );
+                    }
+
+                    @Override
+                    public void failed( final Exception exception )
+                    {
+                        super.failed( exception );
+                        changed( edits );
+                    }
+                }, "set properties" );
+    }
+
+    private void changed( final Map<PropertyContainer, Map<String, Object>> edits )
+    {
+        for ( Entry<PropertyContainer, Map<String, Object>> entry : edits.entrySet() )
+        {
+            String lastKey = null;
+            for ( String key : entry.getValue().keySet() )
+            {
+                lastKey = key;
+            }
+            propertySheet.fireChangeEvent( entry.getKey(), lastKey, false );
+        }
+        propertySheet.refreshSafely();
+    }
+}
@@ -22,14 +22,11 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.Callable;
 
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.ui.views.properties.IPropertyDescriptor;
 import org.eclipse.ui.views.properties.IPropertySource;
 import org.neo4j.graphdb.PropertyContainer;
-import org.neo4j.neoclipse.Activator;
-import org.neo4j.neoclipse.graphdb.GraphDbServiceManager;
 import org.neo4j.neoclipse.graphdb.GraphDbUtil;
 import org.neo4j.neoclipse.property.PropertyTransform.PropertyHandler;
 import org.neo4j.neoclipse.view.Dialog;
@@ -76,7 +73,7 @@ public class PropertySource implements IPropertySource
     {
         final List<IPropertyDescriptor> descs = new ArrayList<IPropertyDescriptor>();
         descs.addAll( getHeadPropertyDescriptors() );
-        Map<String, Object> properties = GraphDbUtil.getProperties( container );
+        Map<String, Object> properties = propertySheet.getProperties( container );
         for ( Entry<String, Object> entry : properties.entrySet() )
         {
             String key = entry.getKey();
@@ -108,7 +105,7 @@ public class PropertySource implements IPropertySource
      */
     protected Object getValue( final Object id )
     {
-        return GraphDbUtil.getProperty( container, (String) id );
+        return propertySheet.getProperties( container ).get( id );
     }
 
     /**
@@ -128,24 +125,7 @@ public class PropertySource implements IPropertySource
      */
     protected boolean isSet( final Object id )
     {
-        GraphDbServiceManager gsm = Activator.getDefault().getGraphDbServiceManager();
-        try
-        {
-            return gsm.submitTask( new Callable<Boolean>()
-            {
-                @Override
-                public Boolean call() throws Exception
-                {
-                    return container.hasProperty( (String) id );
-                }
-            }, "check if property exists" ).get();
-        }
-        catch ( Exception e )
-        {
-            e.printStackTrace();
-        }
-        // TODO should handle error somehow
-        return false;
+        return propertySheet.getProperties( container ).containsKey( id );
     }
 
     /**
@@ -167,10 +147,11 @@ public class PropertySource implements IPropertySource
 
     private void setProperty( final String key, final Object value )
     {
-        if ( container.hasProperty( key ) )
+        Object oldValue = propertySheet.getProperties( container ).get( key );
+        if ( oldValue != null )
         {
             // try to keep the same type as the previous value
-            Class<?> c = GraphDbUtil.getProperty( container, key ).getClass();
+            Class<?> c = oldValue.getClass();
             PropertyHandler propertyHandler = PropertyTransform.getHandler( c );
             if ( propertyHandler == null )
             {
@@ -18,19 +18,37 @@
  */
 package org.neo4j.neoclipse.property;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.eclipse.ui.views.properties.IPropertySource;
 import org.eclipse.ui.views.properties.IPropertySourceProvider;
+import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.PropertyContainer;
 import org.neo4j.graphdb.Relationship;
+import org.neo4j.neoclipse.Activator;
+import org.neo4j.neoclipse.graphdb.GraphCallable;
+import org.neo4j.neoclipse.graphdb.GraphCallback;
+import org.neo4j.neoclipse.graphdb.GraphDbUtil;
+import org.neo4j.neoclipse.graphdb.TaskPriority;
 
 /**
- * Resolves the properties for Neo nodes and relationships.
+ * Resolves the properties for Neo nodes and relationships. Property values
+ * are loaded in the background and kept as snapshots the property sources
+ * read from, so the property sheet doesn't wait for the database.
  * 
  * @author Peter H&auml;nsgen
  */
 public class PropertySourceProvider implements IPropertySourceProvider
 {
     private final NeoPropertySheetPage propertySheet;
+    /**
+     * Property snapshots of the shown containers, only touched from the
+     * display thread.
+     */
+    private final Map<PropertyContainer, Map<String, Object>> snapshots = new HashMap<PropertyContainer, Map<String, Object>>();
 
     public PropertySourceProvider(
             final NeoPropertySheetPage neoPropertySheetPage )
@@ -55,4 +73,116 @@ public class PropertySourceProvider implements IPropertySourceProvider
             return null;
         }
     }
+
+    /**
+     * Load the properties of the containers in the background, replacing all
+     * current snapshots.
+     * 
+     * @param containers the containers that are about to be shown
+     * @param display what to do on the display thread when loaded
+     */
+    public void loadProperties( final List<PropertyContainer> containers,
+            final Runnable display )
+    {
+        Activator.getDefault()
+                .getGraphDbServiceManager()
+                .submitReadTask(
+                        new GraphCallable<Map<PropertyContainer, Map<String, Object>>>()
+                        {
+                            @Override
+                            public Map<PropertyContainer, Map<String, Object>> call(
+                                    final GraphDatabaseService graphDb )
+                            {
+                                Map<PropertyContainer, Map<String, Object>> loaded = new HashMap<PropertyContainer, Map<String, Object>>();
+                                for ( PropertyContainer container : containers )
+                                {
+                                    Map<String, Object> props = new HashMap<String, Object>();
+                                    for ( String key : container.getPropertyKeys() )
+                                    {
+                                        props.put( key,
+                                                container.getProperty( key ) );
+                                    }
+                                    loaded.put( container, props );
+                                }
+                                return loaded;
+                            }
+                        },
+                        new GraphCallback<Map<PropertyContainer, Map<String, Object>>>()
+                        {
+                            @Override
+                            public void done(
+                                    final Map<PropertyContainer, Map<String, Object>> loaded )
+                            {
+                                snapshots.clear();
+                                snapshots.putAll( loaded );
+                                display.run();
+                            }
+
+                            @Override
+                            public void failed( final Exception exception )
+                            {
+                                // the sources will load what they need
+                                exception.printStackTrace();
+                                snapshots.clear();
+                                display.run();
+                            }
+                        }, TaskPriority.INTERACTIVE, "load property sheet" );
+    }
+
+    /**
+     * Get the properties of a container. Falls back to reading them directly
+     * if there is no snapshot.
+     * 
+     * @param container node or relationship
+     * @return property keys and values
+     */
+    Map<String, Object> getProperties( final PropertyContainer container )
+    {
+        Map<String, Object> props = snapshots.get( container );
+        if ( props == null )
+        {
+            props = GraphDbUtil.getProperties( container );
+            if ( props == null )
+            {
+                return new HashMap<String, Object>();
+            }
+            snapshots.put( container, props );
+        }
+        return props;
+    }
+
+    /**
+     * Apply a pending edit to the snapshot of a container, if there is one.
+     * 
+     * @param container node or relationship
+     * @param key property key
+     * @param value new value, <code>null</code> for a removed property
+     */
+    void update( final PropertyContainer container, final String key,
+            final Object value )
+    {
+        Map<String, Object> props = snapshots.get( container );
+        if ( props == null )
+        {
+            return;
+        }
+        if ( value == null )
+        {
+            props.remove( key );
+        }
+        else
+        {
+            props.put( key, value );
+        }
+    }
+
+    /**
+     * Drop the snapshot of a container after it changed.
+     * 
+     * @param container node or relationship
+     */
+    void invalidate( final Object container )
+    {
+        snapshots.remove( container );
+    }
 }
@@ -36,6 +36,7 @@ public class RelationshipTypeControl implements DirectedRelationship
     private final RelationshipType relType;
     private boolean in = true;
     private boolean out = true;
+    private double weight = 1;
 
     /**
      * Wrap a relationship type for display in the table viewer.
@@ -95,6 +96,31 @@ public class RelationshipTypeControl implements DirectedRelationship
         }
     }
 
+    /**
+     * Get the weight of the relationship type, used to decide which nodes
+     * to show first when there are too many.
+     * 
+     * @return
+     */
+    public double getWeight()
+    {
+        return weight;
+    }
+
+    /**
+     * Set the weight of the relationship type.
+     * 
+     * @param weight
+     */
+    public void setWeight( final double weight )
+    {
+        if ( this.weight != weight )
+        {
+            this.weight = weight;
+            notifyListeners();
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.neo4j.neoclipse.reltype.DirectedRelationship#getRelType()
      */
@@ -22,13 +22,15 @@ import org.eclipse.jface.viewers.CellEditor;
 import org.eclipse.jface.viewers.CheckboxCellEditor;
 import org.eclipse.jface.viewers.ColumnViewer;
 import org.eclipse.jface.viewers.EditingSupport;
+import org.eclipse.jface.viewers.TextCellEditor;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Composite;
 
 public class RelationshipTypeEditingSupport extends EditingSupport
 {
     public enum ColumnType
     {
-        HEADING, IN, OUT
+        HEADING, IN, OUT, WEIGHT
     }
 
     private final ColumnType column;
@@ -45,6 +47,9 @@ public class RelationshipTypeEditingSupport extends EditingSupport
             case OUT:
                 editor = new CheckboxCellEditor( null, SWT.CHECK );
                 break;
+            case WEIGHT:
+                editor = new TextCellEditor( (Composite) viewer.getControl() );
+                break;
             default:
                 editor = null;
         }
@@ -76,6 +81,8 @@ public class RelationshipTypeEditingSupport extends EditingSupport
                     return control.isIn();
                 case OUT:
                     return control.isOut();
+                case WEIGHT:
+                    return String.valueOf( control.getWeight() );
             }
         }
         return null;
@@ -100,5 +107,20 @@ public class RelationshipTypeEditingSupport extends EditingSupport
             }
             getViewer().update( element, null );
         }
+        else if ( element instanceof RelationshipTypeControl
+            && value instanceof String && column == ColumnType.WEIGHT )
+        {
+            RelationshipTypeControl control = (RelationshipTypeControl) element;
+            try
+            {
+                control.setWeight( Double.parseDouble( ( (String) value ).trim() ) );
+            }
+            catch ( NumberFormatException e )
+            {
+                // keep the old weight
+                return;
+            }
+            getViewer().update( element, null );
+        }
     }
 }
@@ -37,9 +37,11 @@ import org.neo4j.neoclipse.event.NeoclipseEvent;
 import org.neo4j.neoclipse.event.NeoclipseEventListener;
 import org.neo4j.neoclipse.event.NeoclipseListenerList;
 import org.neo4j.neoclipse.graphdb.GraphCallable;
+import org.neo4j.neoclipse.graphdb.GraphCallback;
 import org.neo4j.neoclipse.graphdb.GraphDbUtil;
 import org.neo4j.neoclipse.view.ErrorMessage;
 import org.neo4j.neoclipse.view.NeoGraphLabelProviderWrapper;
+import org.neo4j.neoclipse.view.UiHelper;
 
 /**
  * Provide (filtered) relationship types. Initial clients: Database graph view
@@ -67,6 +69,16 @@ IStructuredContentProvider
     private final NeoclipseListenerList typesListeners = new NeoclipseListenerList();
     private final ReltypeCtrlChangeListener reltypeCtrlChangeListener = new ReltypeCtrlChangeListener();
     private final NeoclipseListenerList refreshListeners = new NeoclipseListenerList();
+    /**
+     * Relationship types loaded from the database in the background, null
+     * until loaded.
+     */
+    private Set<RelationshipType> dbRelTypes = null;
+    private boolean loadingDbRelTypes = false;
+    /**
+     * Latest filter change not yet sent to the listeners.
+     */
+    private NeoclipseEvent pendingFilterEvent = null;
 
     /**
      * Factory method that creates relationship type items for the table view.
@@ -93,7 +105,15 @@ IStructuredContentProvider
     {
         if ( viewAll )
         {
-            currentRelTypes = getRelationshipTypesFromDb();
+            currentRelTypes = new RelationshipTypeHashSet();
+            if ( dbRelTypes == null )
+            {
+                loadRelationshipTypesFromDb();
+            }
+            else
+            {
+                currentRelTypes.addAll( dbRelTypes );
+            }
             currentRelTypes.addAll( fakeTypes );
         }
         else
@@ -114,6 +134,47 @@ IStructuredContentProvider
         return currentRelTypeCtrls.values().toArray();
     }
 
+    /**
+     * Load the relationship types of the database in the background. Type
+     * change listeners are notified when they are available.
+     */
+    private void loadRelationshipTypesFromDb()
+    {
+        if ( loadingDbRelTypes )
+        {
+            return;
+        }
+        loadingDbRelTypes = true;
+        Activator.getDefault().getGraphDbServiceManager().submitReadTask(
+                new GraphCallable<Set<RelationshipType>>()
+                {
+                    @Override
+                    public Set<RelationshipType> call(
+                            final GraphDatabaseService graphDb )
+                    {
+                        return GraphDbUtil.getRelationshipTypesFromDb( graphDb );
+                    }
+                }, new GraphCallback<Set<RelationshipType>>()
+                {
+                    @Override
+                    public void done( final Set<RelationshipType> relTypes )
+                    {
+                        loadingDbRelTypes = false;
+                        dbRelTypes = relTypes;
+                        notifyTypesListeners( new NeoclipseEvent(
+                                RelationshipTypesProvider.this ) );
+                    }
+
+                    @Override
+                    public void failed( final Exception exception )
+                    {
+                        loadingDbRelTypes = false;
+                        ErrorMessage.showDialog( "Listing relationship types",
+                                exception );
+                    }
+                }, "get relationship types" );
+    }
+
     /**
      * Get all relationship types in the database.
      * 
@@ -123,7 +184,7 @@ IStructuredContentProvider
     {
         try
         {
-            return Activator.getDefault().getGraphDbServiceManager().submitTask(
+            return Activator.getDefault().getGraphDbServiceManager().submitReadTask(
                     new GraphCallable<Set<RelationshipType>>()
                     {
                         @Override
@@ -242,6 +303,7 @@ IStructuredContentProvider
 
     public void refresh()
     {
+        dbRelTypes = null;
         fakeTypes.clear();
         currentRelTypes.clear();
         currentRelTypeCtrls.clear();
@@ -277,12 +339,29 @@ IStructuredContentProvider
 
     /**
      * Notify listeners something changed in the relationship type filters.
+     * Changes made in a row are sent as one notification with the latest
+     * event, so the graph view reloads once.
      * 
      * @param event
      */
     private void notifyFilterListeners( final NeoclipseEvent event )
     {
-        filterListeners.notifyListeners( event );
+        boolean scheduled = pendingFilterEvent != null;
+        pendingFilterEvent = event;
+        if ( scheduled )
+        {
+            return;
+        }
+        UiHelper.asyncExec( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                NeoclipseEvent latest = pendingFilterEvent;
+                pendingFilterEvent = null;
+                filterListeners.notifyListeners( latest );
+            }
+        } );
     }
 
     /**
@@ -35,8 +35,10 @@ import org.neo4j.graphdb.index.Index;
 import org.neo4j.graphdb.index.IndexHits;
 import org.neo4j.graphdb.index.IndexManager;
 import org.neo4j.neoclipse.Activator;
+import org.neo4j.neoclipse.graphdb.CancellationToken;
 import org.neo4j.neoclipse.graphdb.GraphCallable;
 import org.neo4j.neoclipse.graphdb.GraphDbServiceManager;
+import org.neo4j.neoclipse.graphdb.TaskPriority;
 import org.neo4j.neoclipse.view.ErrorMessage;
 import org.neo4j.neoclipse.view.UiHelper;
 
@@ -121,14 +123,27 @@ public class NeoSearchQuery implements ISearchQuery
             return new Status( IStatus.ERROR, Activator.PLUGIN_ID, "There is no active Neo4j service." );
         }
 
+        // the search job's monitor decides when to give up
+        final CancellationToken token = new CancellationToken()
+        {
+            @Override
+            public boolean isCancelled()
+            {
+                return super.isCancelled() || monitor.isCanceled();
+            }
+        };
         try
         {
-            gsm.submitTask( new GraphCallable<Boolean>()
+            gsm.submitReadTask( new GraphCallable<Boolean>()
             {
                 @Override
                 public Boolean call( final GraphDatabaseService graphDb )
                 {
-                    final Iterable<PropertyContainer> matches = getMatchingNodesFromIndices( monitor, graphDb );
+                    final Iterable<PropertyContainer> matches = getMatchingNodesFromIndices( token, graphDb );
+                    if ( token.isCancelled() )
+                    {
+                        return false;
+                    }
                     UiHelper.asyncExec( new Runnable()
                     {
                         @Override
@@ -139,7 +154,7 @@ public class NeoSearchQuery implements ISearchQuery
                     } );
                     return true;
                 }
-            }, "run search" ).get();
+            }, TaskPriority.BULK, "run search" ).get();
             if ( monitor.isCanceled() )
             {
                 return new Status( IStatus.CANCEL, Activator.PLUGIN_ID, "Cancelled." );
@@ -165,19 +180,23 @@ public class NeoSearchQuery implements ISearchQuery
         return null;
     }
 
-    private Iterable<PropertyContainer> getMatchingNodesFromIndices( final IProgressMonitor monitor,
+    private Iterable<PropertyContainer> getMatchingNodesFromIndices( final CancellationToken token,
             final GraphDatabaseService graphDb )
     {
         List<PropertyContainer> matches = new LinkedList<PropertyContainer>();
         IndexManager indexManager = graphDb.index();
         for ( String indexName : search.getNodeIndexNames() )
         {
+            if ( token.isCancelled() )
+            {
+                return matches;
+            }
             if ( !indexManager.existsForNodes( indexName ) )
             {
                 continue;
             }
             Index<Node> nodeIndex = indexManager.forNodes( indexName );
-            Iterable<Node> hits;
+            IndexHits<Node> hits;
             switch ( search.getMode() )
             {
             case EXACT_MATCH:
@@ -192,11 +211,20 @@ public class NeoSearchQuery implements ISearchQuery
             }
             for ( Node hit : hits )
             {
+                if ( token.isCancelled() )
+                {
+                    hits.close();
+                    return matches;
+                }
                 matches.add( hit );
             }
         }
         for ( String indexName : search.getRelationshipIndexNames() )
         {
+            if ( token.isCancelled() )
+            {
+                return matches;
+            }
             if ( !indexManager.existsForRelationships( indexName ) )
             {
                 continue;
@@ -216,6 +244,11 @@ public class NeoSearchQuery implements ISearchQuery
             }
             for ( Relationship hit : hits )
             {
+                if ( token.isCancelled() )
+                {
+                    hits.close();
+                    return matches;
+                }
                 matches.add( hit );
             }
         }
@@ -0,0 +1,162 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.neoclipse.util;
+
+/**
+ * Keeps the primitive long values with the highest scores out of those
+ * offered, up to a capacity. The values are held in a heap with the worst one
+ * on top, so offering a value costs logarithmic time in the capacity no
+ * matter how many values are offered in all. Of values with the same score
+ * the ones offered first are kept.
+ */
+public class BoundedLongHeap
+{
+    private final long[] values;
+    private final double[] scores;
+    /**
+     * Order in which the values were offered, breaks ties.
+     */
+    private final long[] order;
+    private int size = 0;
+    private long offered = 0;
+
+    /**
+     * Create a heap.
+     * 
+     * @param capacity maximum number of values to keep
+     */
+    public BoundedLongHeap( final int capacity )
+    {
+        values = new long[capacity];
+        scores = new double[capacity];
+        order = new long[capacity];
+    }
+
+    /**
+     * Offer a value, it's kept if it's among the best ones so far.
+     * 
+     * @param value the value
+     * @param score higher is better
+     */
+    public void offer( final long value, final double score )
+    {
+        long seq = offered++;
+        if ( size < values.length )
+        {
+            set( size, value, score, seq );
+            siftUp( size++ );
+        }
+        else if ( size > 0 && score > scores[0] )
+        {
+            set( 0, value, score, seq );
+            siftDown( 0, size );
+        }
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Get the values, best first. The heap is emptied.
+     * 
+     * @return the values
+     */
+    public long[] drain()
+    {
+        long[] result = new long[size];
+        while ( size > 0 )
+        {
+            result[--size] = values[0];
+            swap( 0, size );
+            siftDown( 0, size );
+        }
+        return result;
+    }
+
+    private void set( final int index, final long value, final double score,
+            final long seq )
+    {
+        values[index] = value;
+        scores[index] = score;
+        order[index] = seq;
+    }
+
+    /**
+     * Check if the value at one index should go before the one at another
+     * when deciding what to drop.
+     */
+    private boolean isWorse( final int index, final int other )
+    {
+        return scores[index] < scores[other] || scores[index] == scores[other]
+                                                && order[index] > order[other];
+    }
+
+    private void siftUp( final int start )
+    {
+        int index = start;
+        while ( index > 0 )
+        {
+            int parent = ( index - 1 ) >>> 1;
+            if ( !isWorse( index, parent ) )
+            {
+                return;
+            }
+            swap( index, parent );
+            index = parent;
+        }
+    }
+
+    private void siftDown( final int start, final int end )
+    {
+        int index = start;
+        while ( true )
+        {
+            int child = 2 * index + 1;
+            if ( child >= end )
+            {
+                return;
+            }
+            if ( child + 1 < end && isWorse( child + 1, child ) )
+            {
+                child++;
+            }
+            if ( !isWorse( child, index ) )
+            {
+                return;
+            }
+            swap( index, child );
+            index = child;
+        }
+    }
+
+    private void swap( final int first, final int second )
+    {
+        long value = values[first];
+        values[first] = values[second];
+        values[second] = value;
+        double score = scores[first];
+        scores[first] = scores[second];
+        scores[second] = score;
+        long seq = order[first];
+        order[first] = order[second];
+        order[second] = seq;
+    }
+}
@@ -65,6 +65,15 @@ public class DataExportUtils
         return file;
     }
 
+    public static File exportTaskStatistics( String csv ) throws IOException
+    {
+        File file = getFile( "-tasks.csv" );
+        BufferedWriter out = new BufferedWriter( new FileWriter( file ) );
+        out.write( csv );
+        out.close();
+        return file;
+    }
+
     private static File getFile( String fileExtention )
     {
 
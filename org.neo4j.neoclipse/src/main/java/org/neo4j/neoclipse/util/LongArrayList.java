@@ -0,0 +1,96 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.neoclipse.util;
+
+import java.util.Arrays;
+
+/**
+ * Growing array of primitive longs. Used as a queue by reading it with an
+ * index of its own, which keeps everything that was queued around.
+ */
+public class LongArrayList
+{
+    private long[] values;
+    private int size = 0;
+
+    public LongArrayList()
+    {
+        this( 16 );
+    }
+
+    /**
+     * Create a list with room for a number of values.
+     * 
+     * @param capacity initial capacity
+     */
+    public LongArrayList( final int capacity )
+    {
+        values = new long[Math.max( capacity, 1 )];
+    }
+
+    public void add( final long value )
+    {
+        if ( size == values.length )
+        {
+            values = Arrays.copyOf( values, size * 2 );
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * Add all values of another list.
+     * 
+     * @param other the values to add
+     */
+    public void addAll( final LongArrayList other )
+    {
+        if ( size + other.size > values.length )
+        {
+            values = Arrays.copyOf( values,
+                    Math.max( size + other.size, size * 2 ) );
+        }
+        System.arraycopy( other.values, 0, values, size, other.size );
+        size += other.size;
+    }
+
+    public long get( final int index )
+    {
+        if ( index >= size )
+        {
+            throw new IndexOutOfBoundsException( "Index: " + index
+                                                 + ", size: " + size );
+        }
+        return values[index];
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public long[] toArray()
+    {
+        return Arrays.copyOf( values, size );
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Licensed to Neo Technology under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Neo Technology licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.neo4j.neoclipse.util;
+
+import java.util.Arrays;
+
+/**
+ * Set of primitive longs using open addressing, for collecting node and
+ * relationship ids without boxing them.
+ */
+public class LongHashSet
+{
+    private static final long FREE = -1;
+    private static final int MIN_CAPACITY = 16;
+    private long[] keys;
+    private int mask;
+    private int size = 0;
+    /**
+     * The value used to mark free slots is kept on the side.
+     */
+    private boolean containsFree = false;
+
+    public LongHashSet()
+    {
+        this( MIN_CAPACITY );
+    }
+
+    /**
+     * Create a set sized for a number of values.
+     * 
+     * @param expected number of values expected
+     */
+    public LongHashSet( final int expected )
+    {
+        int capacity = MIN_CAPACITY;
+        while ( capacity < expected * 2 )
+        {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        Arrays.fill( keys, FREE );
+        mask = capacity - 1;
+    }
+
+    /**
+     * Add a value.
+     * 
+     * @param value the value
+     * @return true if it wasn't in the set already
+     */
+    public boolean add( final long value )
+    {
+        if ( value == FREE )
+        {
+            if ( containsFree )
+            {
+                return false;
+            }
+            containsFree = true;
+            size++;
+            return true;
+        }
+        int slot = slot( value );
+        while ( keys[slot] != FREE )
+        {
+            if ( keys[slot] == value )
+            {
+                return false;
+            }
+            slot = ( slot + 1 ) & mask;
+        }
+        keys[slot] = value;
+        size++;
+        if ( size * 2 > keys.length )
+        {
+            grow();
+        }
+        return true;
+    }
+
+    /**
+     * Check for a value.
+     * 
+     * @param value the value
+     * @return true if it's in the set
+     */
+    public boolean contains( final long value )
+    {
+        if ( value == FREE )
+        {
+            return containsFree;
+        }
+        int slot = slot( value );
+        while ( keys[slot] != FREE )
+        {
+            if ( keys[slot] == value )
+            {
+                return true;
+            }
+            slot = ( slot + 1 ) & mask;
+        }
+        return false;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    private int slot( final long value )
+    {
+        long hash = value * 0x9E3779B97F4A7C15L;
+        return (int) ( hash ^ ( hash >>> 32 ) ) & mask;
+    }
+
+    private void grow()
+    {
+        long[] old = keys;
+        keys = new long[old.length * 2];
+        Arrays.fill( keys, FREE );
+        mask = keys.length - 1;
+        for ( long value : old )
+        {
+            if ( value != FREE )
+            {
+                int slot = slot( value );
+                while ( keys[slot] != FREE )
+                {
+                    slot = ( slot + 1 ) & mask;
+                }
+                keys[slot] = value;
+            }
+        }
+    }
+}
@@ -18,6 +18,7 @@
  */
 package org.neo4j.neoclipse.view;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
@@ -27,6 +28,8 @@ import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.neoclipse.Activator;
 import org.neo4j.neoclipse.graphdb.GraphCallable;
+import org.neo4j.neoclipse.graphdb.GraphCallback;
+import org.neo4j.neoclipse.graphdb.TaskPriority;
 
 /**
  * Keep track of browsing history and preserve states.
@@ -65,40 +68,13 @@ public class BrowserHistory
         }
 
         /**
-         * Get starting node of this state.
+         * Get the id of the starting node of this state.
          * 
-         * @return starting node or null if it doesn't exist any more
+         * @return node id
          */
-        Node getNode()
+        long getId()
         {
-            try
-            {
-                return Activator.getDefault().getGraphDbServiceManager().submitTask(
-                        new GraphCallable<Node>()
-                        {
-                            @Override
-                            public Node call( final GraphDatabaseService graphDb )
-                            {
-                                if ( graphDb != null )
-                                {
-                                    try
-                                    {
-                                        return graphDb.getNodeById( id );
-                                    }
-                                    catch ( NotFoundException e )
-                                    {
-                                        return null;
-                                    }
-                                }
-                                return null;
-                            }
-                        }, "get starting node of state" ).get();
-            }
-            catch ( Exception e )
-            {
-                ErrorMessage.showDialog( "Create relationship(s)", e );
-            }
-            return null;
+            return id;
         }
 
         boolean isWrappingNode( final Node node )
@@ -114,66 +90,116 @@ public class BrowserHistory
     }
 
     /**
-     * Move backwards in history.
+     * Move backwards in history. The lookup runs in the background, the
+     * callback gets the previous starting point or null.
      * 
-     * @return previous starting point or null
+     * @param callback receives the node on the display thread
      */
-    public Node getPrevious()
+    public void getPrevious( final GraphCallback<Node> callback )
     {
-        Node node = null;
-        while ( node == null && hasPrevious() )
+        List<Integer> candidates = new ArrayList<Integer>();
+        if ( hasPrevious() )
         {
-            --position;
-            node = fetchPrevious();
+            for ( int pos = position - 1; pos >= 0; pos-- )
+            {
+                candidates.add( pos );
+            }
         }
-        return node;
+        resolve( candidates, callback );
     }
 
     /**
-     * Move forward in history.
+     * Move forward in history. The lookup runs in the background, the
+     * callback gets the next starting point or null.
      * 
-     * @return next starting point or null
+     * @param callback receives the node on the display thread
      */
-    public Node getNext()
+    public void getNext( final GraphCallback<Node> callback )
     {
-        Node node = null;
-        while ( node == null && hasNext() )
+        List<Integer> candidates = new ArrayList<Integer>();
+        if ( hasNext() )
         {
-            node = fetchNext();
-            ++position;
+            for ( int pos = position + 1; pos < states.size(); pos++ )
+            {
+                candidates.add( pos );
+            }
         }
-        return node;
-    }
-
-    /**
-     * Get next node.
-     * 
-     * @return next node or null
-     */
-    private Node fetchNext()
-    {
-        return getNode( position + 1 );
+        resolve( candidates, callback );
     }
 
     /**
-     * Get previous node.
+     * Find the first state in the candidate positions that still has its node
+     * in the database and move there. If none is left, the position ends up
+     * at the last candidate.
      * 
-     * @return previous node or null
+     * @param candidates positions to try, in order
+     * @param callback receives the node or null
      */
-    private Node fetchPrevious()
+    private void resolve( final List<Integer> candidates,
+            final GraphCallback<Node> callback )
     {
-        return getNode( position );
-    }
+        if ( candidates.isEmpty() )
+        {
+            callback.done( null );
+            return;
+        }
+        final long[] ids = new long[candidates.size()];
+        for ( int i = 0; i < ids.length; i++ )
+        {
+            ids[i] = states.get( candidates.get( i ) ).getId();
+        }
+        Activator.getDefault().getGraphDbServiceManager().submitReadTask(
+                new GraphCallable<Node>()
+                {
+                    @Override
+                    public Node call( final GraphDatabaseService graphDb )
+                    {
+                        if ( graphDb == null )
+                        {
+                            return null;
+                        }
+                        for ( long id : ids )
+                        {
+                            try
+                            {
+                                return graphDb.getNodeById( id );
+                            }
+                            catch ( NotFoundException e )
+                            {
+                                // deleted, try the next one
+                            }
+                        }
+                        return null;
+                    }
+                }, new GraphCallback<Node>()
+                {
+                    @Override
+                    public void done( final Node node )
+                    {
+                        if ( node == null )
+                        {
+                            position = candidates.get( candidates.size() - 1 );
+                        }
+                        else
+                        {
+                            for ( int i = 0; i < ids.length; i++ )
+                            {
+                                if ( ids[i] == node.getId() )
+                                {
+                                    position = candidates.get( i );
+                                    break;
+                                }
+                            }
+                        }
+                        callback.done( node );
+                    }
 
-    /**
-     * Get node in list from position.
-     * 
-     * @param pos position in state list
-     * @return node at the position or null
-     */
-    private Node getNode( final int pos )
-    {
-        return states.get( pos ).getNode();
+                    @Override
+                    public void failed( final Exception exception )
+                    {
+                        callback.failed( exception );
+                    }
+                }, TaskPriority.INTERACTIVE, "get starting node of state" );
     }
 
     /**
@@ -214,7 +240,7 @@ public class BrowserHistory
         {
             return;
         }
-        if ( hasNext() && node.equals( fetchNext() ) )
+        if ( hasNext() && states.get( position + 1 ).isWrappingNode( node ) )
         {
             position++;
             return;
@@ -18,9 +18,14 @@
  */
 package org.neo4j.neoclipse.view;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 
 import org.eclipse.jface.preference.IPreferenceStore;
@@ -28,12 +33,24 @@ import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.zest.core.viewers.IGraphEntityRelationshipContentProvider;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
 import org.neo4j.neoclipse.Activator;
-import org.neo4j.neoclipse.graphdb.DefaultTraverser;
+import org.neo4j.neoclipse.graphdb.BestFirstTraverser;
+import org.neo4j.neoclipse.graphdb.CancellationToken;
+import org.neo4j.neoclipse.graphdb.CachingTraverser;
+import org.neo4j.neoclipse.graphdb.FanOutLimit;
+import org.neo4j.neoclipse.graphdb.FanOutPlaceholder;
 import org.neo4j.neoclipse.graphdb.GraphCallable;
+import org.neo4j.neoclipse.graphdb.GraphCallback;
 import org.neo4j.neoclipse.graphdb.GraphDbServiceManager;
-import org.neo4j.neoclipse.graphdb.TraversalStrategy;
+import org.neo4j.neoclipse.graphdb.IdTraverser;
+import org.neo4j.neoclipse.graphdb.NeighbourhoodSnapshot;
+import org.neo4j.neoclipse.graphdb.NeighbourhoodSnapshot.ColorKey;
+import org.neo4j.neoclipse.graphdb.NodePriority;
+import org.neo4j.neoclipse.graphdb.ParallelTraverser;
+import org.neo4j.neoclipse.graphdb.RestPrefetch;
+import org.neo4j.neoclipse.graphdb.TaskPriority;
 import org.neo4j.neoclipse.preference.Preferences;
 import org.neo4j.neoclipse.reltype.DirectedRelationship;
 import org.neo4j.neoclipse.reltype.RelationshipTypeHashSet;
@@ -56,10 +73,53 @@ public class NeoGraphContentProvider implements
      * The view.
      */
     protected NeoGraphViewPart view;
-    private final TraversalStrategy traverser = new DefaultTraverser();
+    private final IdTraverser idTraverser = new IdTraverser();
+    private final ParallelTraverser parallelTraverser = new ParallelTraverser();
+    private final BestFirstTraverser bestFirstTraverser = new BestFirstTraverser();
+    private final CachingTraverser traverser = new CachingTraverser(
+            idTraverser );
     // private final TraversalStrategy traverser = new DefaultTraverser();
-    private final Set<RelationshipType> relTypes = new RelationshipTypeHashSet();
+    /**
+     * Key of the background load, only the latest one is shown.
+     */
+    private static final String INPUT_TASK_KEY = "graph-view-input";
+    /**
+     * Depth loaded and shown first, deeper levels are loaded and added to the
+     * view one at a time after that.
+     */
+    private static final int STREAM_FIRST_DEPTH = 1;
     private final IPreferenceStore preferenceStore;
+    /**
+     * Snapshot loaded in the background, handed out once.
+     */
+    private NeighbourhoodSnapshot preparedSnapshot = null;
+    /**
+     * Snapshot of the graph currently shown.
+     */
+    private NeighbourhoodSnapshot snapshot = null;
+    /**
+     * Outgoing relationships by end node id of nodes that aren't in the
+     * snapshot, dropped with the snapshot. Only touched from the display
+     * thread.
+     */
+    private final Map<Long, Map<Long, List<Relationship>>> adjacency = new HashMap<Long, Map<Long, List<Relationship>>>();
+    /**
+     * Nodes outside the snapshot whose relationships are being read.
+     */
+    private final Set<Long> loadingAdjacency = new HashSet<Long>();
+    /**
+     * Stops the background load when the input changes again.
+     */
+    private CancellationToken loadToken = null;
+    /**
+     * Whether a background load or expansion is on its way.
+     */
+    private boolean loading = false;
+    /**
+     * Relationships followed per node, type and direction, raised when
+     * placeholders are expanded.
+     */
+    private volatile FanOutLimit fanOut = FanOutLimit.NONE;
 
     /**
      * The constructor.
@@ -68,6 +128,9 @@ public class NeoGraphContentProvider implements
     {
         this.view = view;
         preferenceStore = Activator.getDefault().getPreferenceStore();
+        Activator.getDefault()
+                .getGraphDbServiceManager()
+                .addServiceEventListener( traverser );
     }
 
     /**
@@ -80,31 +143,397 @@ public class NeoGraphContentProvider implements
         {
             return new Object[] {};
         }
+        if ( source instanceof FanOutPlaceholder
+             || dest instanceof FanOutPlaceholder )
+        {
+            return getPlaceholderConnections( source, dest );
+        }
         final Node start = (Node) source;
         final Node end = (Node) dest;
-        try
+        NeighbourhoodSnapshot current = snapshot;
+        if ( current != null && current.contains( start )
+                && current.contains( end ) )
+        {
+            return current.getRelationships( start, end );
+        }
+        // nodes outside the snapshot get all their outgoing relationships
+        // read in one go, instead of one task for each pair
+        Map<Long, List<Relationship>> byEnd = adjacency.get( start.getId() );
+        if ( byEnd == null )
+        {
+            loadOutgoingRelationships( start );
+            return new Object[] {};
+        }
+        List<Relationship> rels = byEnd.get( end.getId() );
+        if ( rels == null )
+        {
+            return new Object[] {};
+        }
+        return rels.toArray();
+    }
+
+    /**
+     * Read the outgoing relationships of a node outside the snapshot in the
+     * background. The view is refreshed when the last pending read is done.
+     * 
+     * @param start the node
+     */
+    private void loadOutgoingRelationships( final Node start )
+    {
+        if ( !loadingAdjacency.add( start.getId() ) )
         {
-            return Activator.getDefault().getGraphDbServiceManager().submitTask(
-                    new Callable<Object[]>()
+            return;
+        }
+        Activator.getDefault().getGraphDbServiceManager().submitReadTask(
+                new GraphCallable<Map<Long, List<Relationship>>>()
+                {
+                    @Override
+                    public Map<Long, List<Relationship>> call(
+                            final GraphDatabaseService graphDb )
                     {
-                        @Override
-                        public Object[] call() throws Exception
+                        return traverser.getOutgoingRelationships( start );
+                    }
+                }, new GraphCallback<Map<Long, List<Relationship>>>()
+                {
+                    @Override
+                    public void done( final Map<Long, List<Relationship>> byEnd )
+                    {
+                        adjacency.put( start.getId(), byEnd );
+                        loadingAdjacency.remove( start.getId() );
+                        if ( loadingAdjacency.isEmpty() )
                         {
-                            return traverser.getRelationships( start, end ).toArray();
+                            view.refreshPreserveLayout();
                         }
-                    }, "find rels" ).get();
-        }
-        catch ( InterruptedException e )
+                    }
+
+                    @Override
+                    public void failed( final Exception exception )
+                    {
+                        loadingAdjacency.remove( start.getId() );
+                        exception.printStackTrace();
+                    }
+                }, TaskPriority.INTERACTIVE, "find rels" );
+    }
+
+    /**
+     * Connect a placeholder to its node, drawn in the direction of the
+     * relationships it stands for.
+     */
+    private static Object[] getPlaceholderConnections( final Object source,
+            final Object dest )
+    {
+        if ( source instanceof FanOutPlaceholder && dest instanceof Node )
         {
-            e.printStackTrace();
+            FanOutPlaceholder placeholder = (FanOutPlaceholder) source;
+            if ( !placeholder.isOutgoing()
+                 && placeholder.getNodeId() == ( (Node) dest ).getId() )
+            {
+                return new Object[] { placeholder.getConnection() };
+            }
         }
-        catch ( ExecutionException e )
+        else if ( source instanceof Node && dest instanceof FanOutPlaceholder )
         {
-            e.printStackTrace();
+            FanOutPlaceholder placeholder = (FanOutPlaceholder) dest;
+            if ( placeholder.isOutgoing()
+                 && placeholder.getNodeId() == ( (Node) source ).getId() )
+            {
+                return new Object[] { placeholder.getConnection() };
+            }
         }
         return new Object[] {};
     }
 
+    /**
+     * Follow more of the relationships a placeholder stands for the next time
+     * the elements are loaded.
+     * 
+     * @param placeholder the placeholder to expand
+     */
+    public void expandPlaceholder( final FanOutPlaceholder placeholder )
+    {
+        fanOut = getFanOut().raise( placeholder );
+    }
+
+    /**
+     * Get the fan-out limit, starting over when the preference has changed.
+     */
+    private FanOutLimit getFanOut()
+    {
+        int limit = preferenceStore.getInt( Preferences.MAX_FAN_OUT );
+        FanOutLimit current = fanOut;
+        if ( current.getDefaultLimit() != limit )
+        {
+            current = new FanOutLimit( limit );
+            fanOut = current;
+        }
+        return current;
+    }
+
+    /**
+     * Load the elements for a node in the background, together with the
+     * relationships, properties and colors needed to render them. The display
+     * runnable is run on the display thread when they are ready, and the next
+     * call to {@link #getElements(Object)} for that node will use them. A
+     * load that is replaced by a later one is cancelled.
+     * <p>
+     * Unless the traversal is cached, only the first level is loaded before
+     * it's handed out. The deeper levels are then loaded one by one in
+     * follow-up tasks and added to the view as they arrive, and the whole
+     * traversal is cached when the last one is done.
+     * 
+     * @param node the input node to load elements for
+     * @param display what to do when the elements are available
+     */
+    public void prepareElements( final Node node, final Runnable display )
+    {
+        final GraphDbServiceManager gsm = Activator.getDefault().getGraphDbServiceManager();
+        if ( node == null || gsm == null || !gsm.isRunning() )
+        {
+            UiHelper.asyncExec( display );
+            return;
+        }
+        cancelLoad();
+        final CancellationToken token = new CancellationToken();
+        loadToken = token;
+        loading = true;
+        final int depth = view.getTraversalDepth();
+        final NeoGraphLabelProvider labelProvider = view.getLabelProvider();
+        gsm.submitReadTask( INPUT_TASK_KEY, new GraphCallable<NeighbourhoodSnapshot>()
+        {
+            @Override
+            public NeighbourhoodSnapshot call( final GraphDatabaseService graphDb )
+            {
+                if ( depth <= STREAM_FIRST_DEPTH
+                     || traverser.isCached( node,
+                             relTypesProvider.getFilteredDirectedRelationships(),
+                             depth, preferenceStore.getInt( Preferences.MAX_NODES ),
+                             getFanOut(), gsm ) )
+                {
+                    return getSnapshot( graphDb, node, depth, labelProvider,
+                            token );
+                }
+                return getSnapshot( graphDb, node, STREAM_FIRST_DEPTH,
+                        labelProvider, token );
+            }
+        }, new GraphCallback<NeighbourhoodSnapshot>()
+        {
+            @Override
+            public void done( final NeighbourhoodSnapshot result )
+            {
+                preparedSnapshot = result;
+                display.run();
+                if ( snapshot == result && result.getDepth() < depth
+                     && !token.isCancelled() )
+                {
+                    loadNextLevel( result, depth, token );
+                }
+                else if ( loadToken == token )
+                {
+                    // done, or not shown after all
+                    loading = false;
+                }
+            }
+
+            @Override
+            public void failed( final Exception exception )
+            {
+                exception.printStackTrace();
+                if ( loadToken == token )
+                {
+                    loading = false;
+                }
+                preparedSnapshot = null;
+                display.run();
+            }
+        }, TaskPriority.INTERACTIVE, "get elements" );
+    }
+
+    /**
+     * Load the next level of the shown snapshot in the background and add it
+     * to the view, and so on until the depth is reached. Stops when the shown
+     * snapshot is replaced in between.
+     * 
+     * @param base the snapshot shown now
+     * @param depth the depth to reach
+     * @param token cancelled when a new load is started
+     */
+    private void loadNextLevel( final NeighbourhoodSnapshot base,
+            final int depth, final CancellationToken token )
+    {
+        final GraphDbServiceManager gsm = Activator.getDefault().getGraphDbServiceManager();
+        final NeoGraphLabelProvider labelProvider = view.getLabelProvider();
+        final Collection<? extends DirectedRelationship> relDirList = relTypesProvider.getFilteredDirectedRelationships();
+        final int max = preferenceStore.getInt( Preferences.MAX_NODES );
+        final FanOutLimit limit = getFanOut();
+        gsm.submitReadTask( INPUT_TASK_KEY, new GraphCallable<NeighbourhoodSnapshot>()
+        {
+            @Override
+            public NeighbourhoodSnapshot call( final GraphDatabaseService graphDb )
+            {
+                return expandSnapshot( graphDb, base, base.getDepth() + 1,
+                        labelProvider, token );
+            }
+        }, new GraphCallback<NeighbourhoodSnapshot>()
+        {
+            @Override
+            public void done( final NeighbourhoodSnapshot result )
+            {
+                if ( token.isCancelled() || snapshot != base )
+                {
+                    if ( loadToken == token )
+                    {
+                        loading = false;
+                    }
+                    return;
+                }
+                NeighbourhoodSnapshot shown = result;
+                boolean last = result.getDepth() >= depth
+                               || result.getLevelNodes( result.getDepth() ).isEmpty()
+                               || !result.canExpand( relDirList );
+                if ( last && result.getDepth() < depth )
+                {
+                    // nothing more to find, or the node limit was reached
+                    shown = result.copy( depth );
+                }
+                showSnapshot( shown );
+                view.showDepthChange( base );
+                if ( !last )
+                {
+                    loadNextLevel( shown, depth, token );
+                    return;
+                }
+                loading = false;
+                if ( shown.hasFilter( relDirList ) && limit == getFanOut() )
+                {
+                    traverser.putLevels( shown.getInput(), relDirList, depth,
+                            max, limit, getLevels( shown ),
+                            shown.getPlaceholders(), gsm );
+                }
+            }
+
+            @Override
+            public void failed( final Exception exception )
+            {
+                exception.printStackTrace();
+                if ( loadToken == token )
+                {
+                    loading = false;
+                }
+            }
+        }, TaskPriority.INTERACTIVE, "get next level" );
+    }
+
+    /**
+     * Get the nodes of a snapshot by level, up to the first empty level.
+     */
+    private static List<List<Node>> getLevels(
+            final NeighbourhoodSnapshot current )
+    {
+        List<List<Node>> levels = new ArrayList<List<Node>>();
+        for ( int level = 0; level <= current.getDepth(); level++ )
+        {
+            List<Node> nodes = current.getLevelNodes( level );
+            if ( nodes.isEmpty() )
+            {
+                break;
+            }
+            levels.add( nodes );
+        }
+        return levels;
+    }
+
+    /**
+     * Stop the background load, if any, as the shown snapshot is about to be
+     * replaced.
+     */
+    private void cancelLoad()
+    {
+        if ( loadToken != null )
+        {
+            loadToken.cancel();
+            loadToken = null;
+        }
+        loading = false;
+    }
+
+    /**
+     * Move the shown snapshot to another traversal depth, only loading the
+     * levels that are added or dropping the ones that are removed. The display
+     * runnable is run on the display thread once the new snapshot is the
+     * shown one.
+     * 
+     * @param depth the new traversal depth
+     * @param display what to do when the new snapshot is shown
+     * @return false if the shown snapshot can't be used, then the elements
+     *         have to be loaded again
+     */
+    public boolean changeDepth( final int depth, final Runnable display )
+    {
+        final NeighbourhoodSnapshot base = snapshot;
+        GraphDbServiceManager gsm = Activator.getDefault().getGraphDbServiceManager();
+        if ( base == null || loading || gsm == null || !gsm.isRunning() )
+        {
+            return false;
+        }
+        Collection<? extends DirectedRelationship> relDirList;
+        relDirList = relTypesProvider.getFilteredDirectedRelationships();
+        if ( depth <= base.getDepth() )
+        {
+            if ( !base.hasFilter( relDirList ) )
+            {
+                return false;
+            }
+            showSnapshot( base.copy( depth ) );
+            display.run();
+            return true;
+        }
+        if ( !base.canExpand( relDirList ) )
+        {
+            return false;
+        }
+        final CancellationToken token = new CancellationToken();
+        loadToken = token;
+        loading = true;
+        final NeoGraphLabelProvider labelProvider = view.getLabelProvider();
+        gsm.submitReadTask( INPUT_TASK_KEY, new GraphCallable<NeighbourhoodSnapshot>()
+        {
+            @Override
+            public NeighbourhoodSnapshot call( final GraphDatabaseService graphDb )
+            {
+                return expandSnapshot( graphDb, base, depth, labelProvider,
+                        token );
+            }
+        }, new GraphCallback<NeighbourhoodSnapshot>()
+        {
+            @Override
+            public void done( final NeighbourhoodSnapshot result )
+            {
+                loading = false;
+                showSnapshot( result );
+                display.run();
+            }
+
+            @Override
+            public void failed( final Exception exception )
+            {
+                exception.printStackTrace();
+                loading = false;
+                view.refresh();
+            }
+        }, TaskPriority.INTERACTIVE, "expand elements" );
+        return true;
+    }
+
+    /**
+     * Get the snapshot of the graph currently shown.
+     * 
+     * @return the snapshot, null if nothing was loaded yet
+     */
+    NeighbourhoodSnapshot getShownSnapshot()
+    {
+        return snapshot;
+    }
+
     /**
      * Returns all nodes the given node is connected with.
      */
@@ -116,21 +545,36 @@ public class NeoGraphContentProvider implements
             return new Node[] {};
         }
         final Node node = (Node) inputElement;
+        if ( preparedSnapshot != null
+             && node.equals( preparedSnapshot.getInput() ) )
+        {
+            NeighbourhoodSnapshot prepared = preparedSnapshot;
+            preparedSnapshot = null;
+            return showSnapshot( prepared );
+        }
         GraphDbServiceManager gsm = Activator.getDefault().getGraphDbServiceManager();
         if ( gsm == null || !gsm.isRunning() )
         {
             return new Node[] { node };
         }
+        // the snapshot is replaced, so a background load can't be shown
+        cancelLoad();
+        final NeoGraphLabelProvider labelProvider = view.getLabelProvider();
         try
         {
-            return gsm.submitTask( new GraphCallable<Object[]>()
-            {
-                @Override
-                public Object[] call( final GraphDatabaseService graphDb )
-                {
-                    return getTheElements( node, graphDb );
-                }
-            }, "get elements" ).get();
+            return showSnapshot( gsm.submitReadTask(
+                    new GraphCallable<NeighbourhoodSnapshot>()
+                    {
+                        @Override
+                        public NeighbourhoodSnapshot call(
+                                final GraphDatabaseService graphDb )
+                        {
+                            return getSnapshot( graphDb, node,
+                                    view.getTraversalDepth(), labelProvider,
+                                    new CancellationToken() );
+                        }
+                    }, TaskPriority.INTERACTIVE, "get elements" )
+                    .get() );
         }
         catch ( InterruptedException e )
         {
@@ -143,39 +587,355 @@ public class NeoGraphContentProvider implements
         return new Node[] { node };
     }
 
-    private Object[] getTheElements( final Node node,
-            final GraphDatabaseService graphDb )
+    /**
+     * Make a snapshot the current one and get its nodes and placeholders.
+     * 
+     * @param current the snapshot to show
+     * @return the elements to show
+     */
+    private Object[] showSnapshot( final NeighbourhoodSnapshot current )
     {
-        GraphDbServiceManager nsm = Activator.getDefault().getGraphDbServiceManager();
-        if ( nsm == null || !nsm.isRunning() )
-        {
-            return new Node[] { node };
-        }
+        snapshot = current;
+        adjacency.clear();
+        view.getLabelProvider().setSnapshot( current );
+        List<Object> elements = new ArrayList<Object>( current.getNodes() );
+        elements.addAll( current.getPlaceholders() );
+        return elements.toArray();
+    }
+
+    /**
+     * Traverse from a node and read everything needed to render the result.
+     * Has to be called from inside a graph task.
+     * 
+     * @param graphDb the database of the task
+     * @param node the input node
+     * @param depth the traversal depth
+     * @param labelProvider decides the node colors
+     * @param token stops the work when cancelled
+     * @return the snapshot
+     */
+    private NeighbourhoodSnapshot getSnapshot(
+            final GraphDatabaseService graphDb, final Node node,
+            final int depth, final NeoGraphLabelProvider labelProvider,
+            final CancellationToken token )
+    {
+        GraphDbServiceManager gsm = Activator.getDefault().getGraphDbServiceManager();
         Collection<? extends DirectedRelationship> relDirList;
         relDirList = relTypesProvider.getFilteredDirectedRelationships();
+        chooseTraverser( relDirList );
+        NeighbourhoodSnapshot result = new NeighbourhoodSnapshot( node,
+                relDirList, depth );
+        List<List<Node>> levels;
+        List<FanOutPlaceholder> truncated = new ArrayList<FanOutPlaceholder>();
+        FanOutLimit limit = getFanOut();
         if ( relDirList.isEmpty() )
         {
             // if there are no relationship types,
             // there can't be any relationships ...
-            return new Node[] { node };
+            levels = Collections.singletonList( Collections.singletonList( node ) );
         }
-        Object[] relDirListArray = relDirList.toArray();
-        relTypes.clear();
-        for ( Object o : relDirListArray )
+        else
         {
-            if ( o instanceof RelationshipType )
+            int max = preferenceStore.getInt( Preferences.MAX_NODES );
+            levels = traverser.getLevels( node, relDirList, depth, max,
+                    limit, truncated, gsm, token );
+            if ( countNodes( levels ) >= max )
             {
-                relTypes.add( (RelationshipType) o );
+                result.setIncomplete();
             }
         }
-        final int depth = view.getTraversalDepth();
+        RelationshipType[] relTypeArray = getRelTypes( relDirList );
+        RestPrefetch prefetch = gsm.isRemote() ? new RestPrefetch( graphDb )
+                : null;
+        for ( int level = 0; level < levels.size(); level++ )
+        {
+            for ( Node currentNode : loadNodes( prefetch, levels.get( level ) ) )
+            {
+                result.addNode( currentNode,
+                        NeighbourhoodSnapshot.readProperties( currentNode ),
+                        level );
+            }
+        }
+        for ( FanOutPlaceholder placeholder : truncated )
+        {
+            result.addPlaceholder( placeholder );
+        }
+        if ( prefetch != null )
+        {
+            prefetchRelationships( prefetch, result, result.getNodes(),
+                    relTypeArray, labelProvider );
+            return result;
+        }
+        addRelationships( result, result.getNodes(), relDirList, limit,
+                labelProvider, token );
+        return result;
+    }
+
+    /**
+     * Grow a snapshot level by level up to a depth, only traversing from its
+     * last level. Has to be called from inside a graph task.
+     * 
+     * @param graphDb the database of the task
+     * @param base the snapshot to start from
+     * @param depth the depth to reach
+     * @param labelProvider decides the node colors
+     * @param token stops the work when cancelled
+     * @return the grown snapshot
+     */
+    private NeighbourhoodSnapshot expandSnapshot(
+            final GraphDatabaseService graphDb,
+            final NeighbourhoodSnapshot base, final int depth,
+            final NeoGraphLabelProvider labelProvider,
+            final CancellationToken token )
+    {
+        Collection<? extends DirectedRelationship> relDirList;
+        relDirList = relTypesProvider.getFilteredDirectedRelationships();
+        chooseTraverser( relDirList );
+        RelationshipType[] relTypeArray = getRelTypes( relDirList );
         int max = preferenceStore.getInt( Preferences.MAX_NODES );
-        return traverser.getNodes( node, relDirList, depth, max, nsm ).toArray();
+        FanOutLimit limit = getFanOut();
+        RestPrefetch prefetch = Activator.getDefault()
+                .getGraphDbServiceManager()
+                .isRemote() ? new RestPrefetch( graphDb ) : null;
+        NeighbourhoodSnapshot result = base.copy( depth );
+        for ( int level = base.getDepth() + 1; level <= depth; level++ )
+        {
+            List<FanOutPlaceholder> truncated = new ArrayList<FanOutPlaceholder>();
+            List<Node> next;
+            if ( prefetch != null )
+            {
+                // one query for the whole level, the nodes come loaded
+                next = prefetch.getNextLevel( result.getLevelNodes( level - 1 ),
+                        relDirList, result, max - result.getNodes().size(),
+                        limit, truncated );
+            }
+            else
+            {
+                next = traverser.getNextLevel( result.getLevelNodes( level - 1 ),
+                        relDirList, result, max - result.getNodes().size(),
+                        limit, truncated, token );
+            }
+            for ( Node currentNode : next )
+            {
+                result.addNode( currentNode,
+                        NeighbourhoodSnapshot.readProperties( currentNode ),
+                        level );
+            }
+            for ( FanOutPlaceholder placeholder : truncated )
+            {
+                result.addPlaceholder( placeholder );
+            }
+            if ( result.getNodes().size() >= max )
+            {
+                result.setIncomplete();
+            }
+            if ( prefetch != null )
+            {
+                prefetchRelationships( prefetch, result, next, relTypeArray,
+                        labelProvider );
+            }
+            else
+            {
+                // the new nodes are the only ones with relationships not seen yet
+                addRelationships( result, next, relDirList, limit,
+                        labelProvider, token );
+            }
+            if ( next.isEmpty() || result.getNodes().size() >= max )
+            {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Add the relationships between nodes of an embedded snapshot that start
+     * or end at some of its nodes, and the colors of those nodes. Only the
+     * relationships within the fan-out limit are gone through, like in the
+     * traversal, so a hub costs no more than the limit.
+     * 
+     * @param result the snapshot
+     * @param nodes the nodes to add the relationships of
+     * @param relDirList the traversed relationship types and directions
+     * @param limit the fan-out limit of the traversal
+     * @param labelProvider decides the node colors
+     * @param token stops the work when cancelled
+     */
+    private static void addRelationships( final NeighbourhoodSnapshot result,
+            final List<Node> nodes,
+            final Collection<? extends DirectedRelationship> relDirList,
+            final FanOutLimit limit, final NeoGraphLabelProvider labelProvider,
+            final CancellationToken token )
+    {
+        for ( Node currentNode : nodes )
+        {
+            token.checkCancelled();
+            for ( DirectedRelationship directedRel : relDirList )
+            {
+                RelationshipType type = directedRel.getRelType();
+                for ( Relationship rel : limit.getRelationships( currentNode,
+                        type, NeighbourhoodSnapshot.getDirection( directedRel ) ) )
+                {
+                    if ( !result.contains( rel )
+                         && result.contains( rel.getOtherNode( currentNode ) ) )
+                    {
+                        result.addRelationship( rel, type,
+                                NeighbourhoodSnapshot.readProperties( rel ),
+                                rel.getStartNode().getId(),
+                                rel.getEndNode().getId() );
+                    }
+                }
+            }
+            List<ColorKey> relKeys = labelProvider.findRelationshipKeys( currentNode );
+            result.setRelationshipKeys( currentNode.getId(), relKeys );
+            result.setColorKey( currentNode.getId(),
+                    labelProvider.chooseColorKey( relKeys ) );
+        }
+    }
+
+    /**
+     * Load nodes together with their properties in one request, when the
+     * database is remote.
+     * 
+     * @param prefetch the prefetch to use, null for embedded databases
+     * @param nodes the nodes found by a traversal
+     * @return the loaded nodes in the same order
+     */
+    private static List<Node> loadNodes( final RestPrefetch prefetch,
+            final List<Node> nodes )
+    {
+        if ( prefetch == null || nodes.isEmpty() )
+        {
+            return nodes;
+        }
+        Map<Long, Node> loaded = prefetch.getNodes( getIds( nodes ) );
+        List<Node> result = new ArrayList<Node>( nodes.size() );
+        for ( Node node : nodes )
+        {
+            Node loadedNode = loaded.get( node.getId() );
+            result.add( loadedNode == null ? node : loadedNode );
+        }
+        return result;
+    }
+
+    /**
+     * Add the relationships from new nodes of a snapshot of a remote
+     * database to all its nodes, and the colors and relationship types of
+     * the new nodes, in two requests.
+     * 
+     * @param prefetch does the requests
+     * @param result the snapshot
+     * @param added the new nodes
+     * @param relTypeArray the relationship types to add
+     * @param labelProvider decides the node colors
+     */
+    private static void prefetchRelationships( final RestPrefetch prefetch,
+            final NeighbourhoodSnapshot result, final List<Node> added,
+            final RelationshipType[] relTypeArray,
+            final NeoGraphLabelProvider labelProvider )
+    {
+        List<Long> addedIds = getIds( added );
+        List<String> typeNames = new ArrayList<String>( relTypeArray.length );
+        for ( RelationshipType type : relTypeArray )
+        {
+            typeNames.add( type.name() );
+        }
+        for ( RestPrefetch.Row row : prefetch.getRelationships( addedIds,
+                getIds( result.getNodes() ), typeNames ) )
+        {
+            Relationship rel = row.getRelationship();
+            if ( !result.contains( rel ) )
+            {
+                result.addRelationship( rel, rel.getType(),
+                        NeighbourhoodSnapshot.readProperties( rel ),
+                        row.getStartId(), row.getEndId() );
+            }
+        }
+        Map<Long, List<ColorKey>> relTypes = prefetch.getRelationshipTypes( addedIds );
+        for ( Long id : addedIds )
+        {
+            List<ColorKey> found = relTypes.get( id );
+            if ( found == null )
+            {
+                found = Collections.emptyList();
+            }
+            result.setRelationshipKeys( id, found );
+            result.setColorKey( id, labelProvider.chooseColorKey( found ) );
+        }
+    }
+
+    private static List<Long> getIds( final List<Node> nodes )
+    {
+        List<Long> ids = new ArrayList<Long>( nodes.size() );
+        for ( Node node : nodes )
+        {
+            ids.add( node.getId() );
+        }
+        return ids;
+    }
+
+    /**
+     * Use the traverser selected in the preferences. Cached traversals are
+     * dropped when the node priority changes, as they were ranked by the old
+     * one.
+     * 
+     * @param relDirList the relationship types to traverse, carrying the
+     *            type weights
+     */
+    private void chooseTraverser(
+            final Collection<? extends DirectedRelationship> relDirList )
+    {
+        NodePriority priority = NodePriority.create(
+                preferenceStore.getString( Preferences.TRAVERSAL_PRIORITY ),
+                preferenceStore.getString( Preferences.PRIORITY_PROPERTY ),
+                relDirList );
+        if ( !priority.equals( bestFirstTraverser.getPriority() ) )
+        {
+            bestFirstTraverser.setPriority( priority );
+            traverser.clear();
+        }
+        if ( priority.getMode() != NodePriority.Mode.BREADTH_FIRST )
+        {
+            traverser.setTraverser( bestFirstTraverser );
+        }
+        else
+        {
+            traverser.setTraverser( preferenceStore.getBoolean( Preferences.PARALLEL_TRAVERSAL ) ? parallelTraverser
+                    : idTraverser );
+        }
+    }
+
+    private static int countNodes( final List<List<Node>> levels )
+    {
+        int count = 0;
+        for ( List<Node> level : levels )
+        {
+            count += level.size();
+        }
+        return count;
+    }
+
+    private static RelationshipType[] getRelTypes(
+            final Collection<? extends DirectedRelationship> relDirList )
+    {
+        Set<RelationshipType> relTypes = new RelationshipTypeHashSet();
+        for ( DirectedRelationship directedRel : relDirList )
+        {
+            relTypes.add( directedRel.getRelType() );
+        }
+        return relTypes.toArray( new RelationshipType[relTypes.size()] );
     }
 
     @Override
     public void dispose()
     {
+        if ( loadToken != null )
+        {
+            loadToken.cancel();
+        }
+        Activator.getDefault()
+                .getGraphDbServiceManager()
+                .removeServiceEventListener( traverser );
     }
 
     @Override
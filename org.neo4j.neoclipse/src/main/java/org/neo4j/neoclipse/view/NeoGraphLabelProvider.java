@@ -21,6 +21,8 @@ package org.neo4j.neoclipse.view;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.core.runtime.Preferences.PropertyChangeEvent;
@@ -30,6 +32,7 @@ import org.eclipse.jface.viewers.ILabelProvider;
 import org.eclipse.jface.viewers.ITableColorProvider;
 import org.eclipse.jface.viewers.ITableLabelProvider;
 import org.eclipse.jface.viewers.LabelProvider;
+import org.eclipse.jface.viewers.LabelProviderChangedEvent;
 import org.eclipse.jface.viewers.TableViewer;
 import org.eclipse.jface.viewers.TableViewerColumn;
 import org.eclipse.swt.SWT;
@@ -40,8 +43,8 @@ import org.eclipse.swt.widgets.TableColumn;
 import org.eclipse.zest.core.viewers.IConnectionStyleProvider;
 import org.eclipse.zest.core.widgets.ZestStyles;
 import org.neo4j.graphdb.Direction;
-import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.PropertyContainer;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
 import org.neo4j.neoclipse.Activator;
@@ -49,7 +52,13 @@ import org.neo4j.neoclipse.Icons;
 import org.neo4j.neoclipse.decorate.SimpleGraphDecorator;
 import org.neo4j.neoclipse.decorate.SimpleGraphDecorator.Settings;
 import org.neo4j.neoclipse.decorate.SimpleGraphDecorator.ViewSettings;
-import org.neo4j.neoclipse.graphdb.GraphCallable;
+import org.neo4j.neoclipse.decorate.UserIcons;
+import org.neo4j.neoclipse.event.NeoclipseEvent;
+import org.neo4j.neoclipse.event.NeoclipseEventListener;
+import org.neo4j.neoclipse.graphdb.FanOutPlaceholder;
+import org.neo4j.neoclipse.graphdb.GraphDbServiceManager;
+import org.neo4j.neoclipse.graphdb.NeighbourhoodSnapshot;
+import org.neo4j.neoclipse.graphdb.NeighbourhoodSnapshot.ColorKey;
 import org.neo4j.neoclipse.preference.DecoratorPreferences;
 import org.neo4j.neoclipse.reltype.DirectedRelationship;
 import org.neo4j.neoclipse.reltype.NodeIconUtil;
@@ -89,6 +98,27 @@ ITableLabelProvider, ITableColorProvider, InputChangeListener
     private static final Image CHECKED = Icons.CHECKED.image();
     private static final Image UNCHECKED = Icons.UNCHECKED.image();
     private Node inputNode = null;
+    /**
+     * Data of the currently shown graph.
+     */
+    private NeighbourhoodSnapshot snapshot = null;
+    /**
+     * User icons for nodes, kept when the decorator is replaced.
+     */
+    private UserIcons userIcons = null;
+    /**
+     * Relabels nodes whose color or icon has been looked up in the
+     * background.
+     */
+    private final NeoclipseEventListener loadListener = new NeoclipseEventListener()
+    {
+        @Override
+        public void stateChanged( final NeoclipseEvent event )
+        {
+            fireLabelProviderChanged( new LabelProviderChangedEvent(
+                    NeoGraphLabelProvider.this, event.getSource() ) );
+        }
+    };
 
     public NeoGraphLabelProvider()
     {
@@ -121,30 +151,16 @@ ITableLabelProvider, ITableColorProvider, InputChangeListener
     }
 
     /**
-     * Check if a node is the reference node.
+     * Check if a node is the reference node, by comparing its id with the one
+     * the graph database service manager resolved.
      * 
      * @param node
      * @return
      */
     private boolean isReferenceNode( final Node node )
     {
-        try
-        {
-            return Activator.getDefault().getGraphDbServiceManager().submitTask(
-                    new GraphCallable<Boolean>()
-                    {
-                        @Override
-                        public Boolean call( final GraphDatabaseService graphDb )
-                        {
-                            return node.getId() == 0;
-                        }
-                    }, "is ref node" ).get();
-        }
-        catch ( Exception e )
-        {
-            ErrorMessage.showDialog( "Create relationship(s)", e );
-        }
-        return false;
+        GraphDbServiceManager gsm = Activator.getDefault().getGraphDbServiceManager();
+        return gsm != null && node.getId() == gsm.getReferenceNodeId();
     }
 
     /**
@@ -171,6 +187,104 @@ ITableLabelProvider, ITableColorProvider, InputChangeListener
         inputNode = node;
     }
 
+    /**
+     * Set the data of the currently shown graph, used to label and color it
+     * without going to the database.
+     * 
+     * @param snapshot snapshot of the shown graph, or null
+     */
+    public void setSnapshot( final NeighbourhoodSnapshot snapshot )
+    {
+        this.snapshot = snapshot;
+        graphDecorator.setSnapshot( snapshot );
+    }
+
+    /**
+     * Forget the rendered labels and the colors and icons of all nodes and
+     * relationships.
+     */
+    public void clearCaches()
+    {
+        graphDecorator.clearCaches();
+    }
+
+    /**
+     * Mark the start of a refresh of the labels of all shown elements, see
+     * {@link #releaseImages()}.
+     */
+    public void startRefresh()
+    {
+        userIcons.startRefresh();
+    }
+
+    /**
+     * Dispose the user icons that aren't in use anymore. Has to be called
+     * after the labels of all shown elements have been refreshed, the refresh
+     * being started with {@link #startRefresh()}.
+     */
+    public void releaseImages()
+    {
+        userIcons.releaseImages();
+    }
+
+    /**
+     * Dispose all user icons. This label provider is shared by several
+     * viewers, so it's not done when one of them disposes it.
+     */
+    public void disposeImages()
+    {
+        userIcons.dispose();
+    }
+
+    /**
+     * Forget the rendered label of a node or relationship, and take its
+     * properties from the given map from now on.
+     * 
+     * @param container the node or relationship that changed
+     * @param props its current properties
+     */
+    public void clearLabel( final PropertyContainer container,
+            final Map<String, Object> props )
+    {
+        graphDecorator.clearLabel( container, props );
+    }
+
+    /**
+     * Find what decides the color of a node. Has to be called from inside a
+     * graph task.
+     * 
+     * @param node the node
+     * @return relationship type and direction, null for the default color
+     */
+    public ColorKey findColorKey( final Node node )
+    {
+        return graphDecorator.findColorKey( node );
+    }
+
+    /**
+     * Find the relationship types and directions of a node, which decide its
+     * color and icon. Has to be called from inside a graph task.
+     * 
+     * @param node the node
+     * @return relationship types with outgoing or incoming as direction
+     */
+    public List<ColorKey> findRelationshipKeys( final Node node )
+    {
+        return graphDecorator.findRelationshipKeys( node );
+    }
+
+    /**
+     * Choose what decides the color of a node from the relationship types
+     * and directions it has.
+     * 
+     * @param found relationship types with outgoing or incoming as direction
+     * @return relationship type and direction, null for the default color
+     */
+    public ColorKey chooseColorKey( final List<ColorKey> found )
+    {
+        return graphDecorator.chooseColorKey( found );
+    }
+
     /**
      * Mark relationships.
      * 
@@ -269,7 +383,18 @@ ITableLabelProvider, ITableColorProvider, InputChangeListener
 
     private final void refreshGraphDecorator()
     {
-        graphDecorator = new SimpleGraphDecorator( settings, viewSettings );
+        if ( userIcons == null )
+        {
+            userIcons = new UserIcons( settings.getNodeIconLocation() );
+        }
+        else
+        {
+            userIcons.setIconLocation( settings.getNodeIconLocation() );
+        }
+        graphDecorator = new SimpleGraphDecorator( settings, viewSettings,
+                userIcons );
+        graphDecorator.setLoadListener( loadListener );
+        graphDecorator.setSnapshot( snapshot );
     }
 
     /**
@@ -355,6 +480,10 @@ ITableLabelProvider, ITableColorProvider, InputChangeListener
             RelationshipType relType = (RelationshipType) o;
             return graphDecorator.getRelationshipColor( relType );
         }
+        else if ( o instanceof FanOutPlaceholder.Connection )
+        {
+            return graphDecorator.getRelationshipColor();
+        }
         return null;
     }
 
@@ -376,7 +505,11 @@ ITableLabelProvider, ITableColorProvider, InputChangeListener
     @Override
     public Color getHighlightColor( final Object rel )
     {
-        return graphDecorator.getRelationshipHighlightColor( (Relationship) rel );
+        if ( rel instanceof Relationship )
+        {
+            return graphDecorator.getRelationshipHighlightColor( (Relationship) rel );
+        }
+        return graphDecorator.getRelationshipColor();
     }
 
     @Override
@@ -451,6 +584,10 @@ ITableLabelProvider, ITableColorProvider, InputChangeListener
             DirectedRelationship control = (DirectedRelationship) element;
             return control.getRelType().name();
         }
+        if ( index == 3 && element instanceof RelationshipTypeControl )
+        {
+            return String.valueOf( ( (RelationshipTypeControl) element ).getWeight() );
+        }
         return null;
     }
 
@@ -516,6 +653,14 @@ ITableLabelProvider, ITableColorProvider, InputChangeListener
         col.setResizable( true );
         column.setEditingSupport( new RelationshipTypeEditingSupport(
                 tableViewer, RelationshipTypeEditingSupport.ColumnType.OUT ) );
+        column = new TableViewerColumn( tableViewer, SWT.LEFT );
+        col = column.getColumn();
+        col.setText( "Weight" );
+        col.setToolTipText( "Nodes reached through relationship types with a higher weight are shown first when there are too many nodes." );
+        col.setWidth( 60 );
+        col.setResizable( true );
+        column.setEditingSupport( new RelationshipTypeEditingSupport(
+                tableViewer, RelationshipTypeEditingSupport.ColumnType.WEIGHT ) );
         table.setHeaderVisible( true );
         table.setLinesVisible( true );
     }
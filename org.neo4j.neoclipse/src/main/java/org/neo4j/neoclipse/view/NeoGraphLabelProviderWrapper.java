@@ -41,4 +41,16 @@ public final class NeoGraphLabelProviderWrapper
         }
         return labelProvider;
     }
+
+    /**
+     * Dispose the images of the label provider, on plugin shutdown.
+     */
+    public static void dispose()
+    {
+        if ( labelProvider != null )
+        {
+            labelProvider.disposeImages();
+            labelProvider = null;
+        }
+    }
 }
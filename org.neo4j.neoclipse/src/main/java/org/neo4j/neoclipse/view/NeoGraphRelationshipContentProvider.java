@@ -19,24 +19,33 @@
 package org.neo4j.neoclipse.view;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
+import org.eclipse.jface.preference.IPreferenceStore;
 import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.zest.core.viewers.IGraphContentProvider;
 import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Path;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
-import org.neo4j.graphdb.ReturnableEvaluator;
-import org.neo4j.graphdb.StopEvaluator;
-import org.neo4j.graphdb.TraversalPosition;
-import org.neo4j.graphdb.Traverser;
-import org.neo4j.graphdb.Traverser.Order;
+import org.neo4j.graphdb.traversal.Evaluators;
+import org.neo4j.graphdb.traversal.TraversalDescription;
+import org.neo4j.kernel.Traversal;
+import org.neo4j.neoclipse.Activator;
+import org.neo4j.neoclipse.graphdb.GraphCallable;
+import org.neo4j.neoclipse.graphdb.GraphDbServiceManager;
+import org.neo4j.neoclipse.graphdb.TaskPriority;
+import org.neo4j.neoclipse.preference.Preferences;
 import org.neo4j.neoclipse.reltype.RelationshipTypesProvider;
 import org.neo4j.neoclipse.reltype.RelationshipTypesProviderWrapper;
+import org.neo4j.neoclipse.util.LongHashSet;
+import org.neo4j.rest.graphdb.traversal.RestTraversal;
 
 /**
  * Get content through relations. TODO: view.addCurrentNode(); calls has to be
@@ -50,6 +59,11 @@ public class NeoGraphRelationshipContentProvider implements
      * The view.
      */
     protected NeoGraphViewPart view;
+    private final IPreferenceStore preferenceStore;
+    /**
+     * Start and end nodes of the last relationships returned, by id.
+     */
+    private volatile Map<Long, Node[]> endpoints = new HashMap<Long, Node[]>();
 
     /**
      * The constructor.
@@ -57,17 +71,28 @@ public class NeoGraphRelationshipContentProvider implements
     public NeoGraphRelationshipContentProvider( final NeoGraphViewPart view )
     {
         this.view = view;
+        preferenceStore = Activator.getDefault().getPreferenceStore();
     }
 
     @Override
     public Object getSource( final Object rel )
     {
+        Node[] ends = endpoints.get( ( (Relationship) rel ).getId() );
+        if ( ends != null )
+        {
+            return ends[0];
+        }
         return ( (Relationship) rel ).getStartNode();
     }
 
     @Override
     public Object getDestination( final Object rel )
     {
+        Node[] ends = endpoints.get( ( (Relationship) rel ).getId() );
+        if ( ends != null )
+        {
+            return ends[1];
+        }
         return ( (Relationship) rel ).getEndNode();
     }
 
@@ -106,39 +131,106 @@ public class NeoGraphRelationshipContentProvider implements
             // view.addCurrentNode();
             return EMPTY_REL_ARRAY;
         }
-        Node node = (Node) input;
-        Traverser trav = node.traverse( Order.BREADTH_FIRST,
-                new StopEvaluator()
-                {
-                    @Override
-                    public boolean isStopNode(
-                            final TraversalPosition currentPos )
-                    {
-                        return currentPos.depth() >= depth;
-                    }
-                }, ReturnableEvaluator.ALL, relDirList.toArray() );
-        Set<Relationship> rels = new HashSet<Relationship>();
-        for ( Node current : trav )
+        final Node node = (Node) input;
+        final List<Object> typesAndDirections = relDirList;
+        final GraphDbServiceManager gsm = Activator.getDefault().getGraphDbServiceManager();
+        final int maxNodes = preferenceStore.getInt( Preferences.MAX_NODES );
+        final int maxRels = preferenceStore.getInt( Preferences.MAX_RELATIONSHIPS );
+        final Map<Long, Node[]> found = new HashMap<Long, Node[]>();
+        Relationship[] rels = EMPTY_REL_ARRAY;
+        try
         {
-            if ( trav.currentPosition().depth() != depth )
+            rels = gsm.submitReadTask( new GraphCallable<Relationship[]>()
             {
-                for ( Relationship rel : current.getRelationships( Direction.OUTGOING ) )
+                @Override
+                public Relationship[] call( final GraphDatabaseService graphDb )
                 {
-                    rels.add( rel );
+                    return getRelationships( node, typesAndDirections, depth,
+                            maxNodes, maxRels, gsm, found );
                 }
-            }
-            else
+            }, TaskPriority.INTERACTIVE, "get relationships" ).get();
+        }
+        catch ( InterruptedException e )
+        {
+            e.printStackTrace();
+        }
+        catch ( ExecutionException e )
+        {
+            e.printStackTrace();
+        }
+        endpoints = found;
+        // if ( rels.length == 0 ) view.addCurrentNode();
+        return rels;
+    }
+
+    /**
+     * Collect the relationships around a node breadth-first, stopping at the
+     * node and relationship budgets. Has to be called from inside a graph
+     * task.
+     * 
+     * @param node the start node
+     * @param relDirList relationship types, each followed by its direction
+     * @param depth the traversal depth
+     * @param maxNodes maximum number of nodes to visit
+     * @param maxRels maximum number of relationships to return
+     * @param gsm the service manager
+     * @param found gets the end nodes of the relationships by their id
+     * @return the relationships
+     */
+    private static Relationship[] getRelationships( final Node node,
+            final List<Object> relDirList, final int depth,
+            final int maxNodes, final int maxRels,
+            final GraphDbServiceManager gsm, final Map<Long, Node[]> found )
+    {
+        TraversalDescription description = gsm.isRemote() ? RestTraversal.description().maxDepth( depth )
+                : Traversal.description().evaluator( Evaluators.toDepth( depth ) );
+        description = description.breadthFirst();
+        for ( int i = 0; i + 1 < relDirList.size(); i += 2 )
+        {
+            description = description.relationships(
+                    (RelationshipType) relDirList.get( i ),
+                    (Direction) relDirList.get( i + 1 ) );
+        }
+        // dedup on the ids to avoid hashing relationship objects
+        LongHashSet relIds = new LongHashSet();
+        List<Relationship> rels = new ArrayList<Relationship>();
+        int nodeCount = 0;
+        try
+        {
+            for ( Path path : description.traverse( node ) )
             {
-                for ( Relationship rel : current.getRelationships() )
+                if ( nodeCount++ >= maxNodes )
+                {
+                    break;
+                }
+                Node current = path.endNode();
+                Iterable<Relationship> currentRels;
+                if ( path.length() != depth )
                 {
-                    rels.add( rel );
+                    currentRels = current.getRelationships( Direction.OUTGOING );
+                }
+                else
+                {
+                    currentRels = current.getRelationships();
+                }
+                for ( Relationship rel : currentRels )
+                {
+                    if ( relIds.add( rel.getId() ) )
+                    {
+                        if ( rels.size() >= maxRels )
+                        {
+                            return rels.toArray( EMPTY_REL_ARRAY );
+                        }
+                        rels.add( rel );
+                        found.put( rel.getId(), new Node[] {
+                                rel.getStartNode(), rel.getEndNode() } );
+                    }
                 }
             }
         }
-        if ( rels.isEmpty() )
+        catch ( NotFoundException nfe )
         {
-            // view.addCurrentNode();
-            return EMPTY_REL_ARRAY;
+            // the start node has been removed
         }
         return rels.toArray( EMPTY_REL_ARRAY );
     }
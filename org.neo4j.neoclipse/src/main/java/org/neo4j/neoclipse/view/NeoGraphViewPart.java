@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.core.runtime.Preferences.IPropertyChangeListener;
 import org.eclipse.core.runtime.Preferences.PropertyChangeEvent;
@@ -48,6 +49,7 @@ import org.eclipse.zest.layouts.LayoutStyles;
 import org.eclipse.zest.layouts.algorithms.SpringLayoutAlgorithm;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.PropertyContainer;
 import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.neoclipse.Activator;
@@ -55,7 +57,9 @@ import org.neo4j.neoclipse.connection.Alias;
 import org.neo4j.neoclipse.event.NeoclipseEvent;
 import org.neo4j.neoclipse.event.NeoclipseEventListener;
 import org.neo4j.neoclipse.event.NeoclipseListenerList;
+import org.neo4j.neoclipse.graphdb.FanOutPlaceholder;
 import org.neo4j.neoclipse.graphdb.GraphCallable;
+import org.neo4j.neoclipse.graphdb.GraphCallback;
 import org.neo4j.neoclipse.graphdb.GraphDbServiceEvent;
 import org.neo4j.neoclipse.graphdb.GraphDbServiceEventListener;
 import org.neo4j.neoclipse.graphdb.GraphDbServiceManager;
@@ -63,6 +67,8 @@ import org.neo4j.neoclipse.graphdb.GraphDbServiceMode;
 import org.neo4j.neoclipse.graphdb.GraphDbServiceStatus;
 import org.neo4j.neoclipse.graphdb.GraphDbUtil;
 import org.neo4j.neoclipse.graphdb.GraphRunnable;
+import org.neo4j.neoclipse.graphdb.NeighbourhoodSnapshot;
+import org.neo4j.neoclipse.graphdb.TaskPriority;
 import org.neo4j.neoclipse.help.HelpContextConstants;
 import org.neo4j.neoclipse.preference.Preferences;
 import org.neo4j.neoclipse.property.NeoPropertySheetPage;
@@ -103,6 +109,10 @@ public class NeoGraphViewPart extends ViewPart implements IZoomableWorkbenchPart
     private RelationshipTypeView relTypeView;
     private final List<InputChangeListener> listeners = new ArrayList<InputChangeListener>();
     private Node previousInputNode = null;
+    /**
+     * Input that is being loaded and not shown yet.
+     */
+    private volatile Node requestedInput = null;
     private final NeoclipseListenerList relColorChange = new NeoclipseListenerList();
     private NeoGraphMenu menu;
     /**
@@ -239,7 +249,7 @@ public class NeoGraphViewPart extends ViewPart implements IZoomableWorkbenchPart
      */
     private void notifyListeners( final Node node )
     {
-        Activator.getDefault().getGraphDbServiceManager().submitTask( new Runnable()
+        Activator.getDefault().getGraphDbServiceManager().submitTask( "graph-view-listeners", new Runnable()
         {
             @Override
             public void run()
@@ -455,12 +465,7 @@ public class NeoGraphViewPart extends ViewPart implements IZoomableWorkbenchPart
      */
     public void goBack()
     {
-        Node node = getBrowserHistory().getPrevious();
-        if ( node != null )
-        {
-            showNode( node );
-        }
-        updateNavStatus();
+        getBrowserHistory().getPrevious( new HistoryCallback() );
     }
 
     /**
@@ -468,12 +473,23 @@ public class NeoGraphViewPart extends ViewPart implements IZoomableWorkbenchPart
      */
     public void goForward()
     {
-        Node node = getBrowserHistory().getNext();
-        if ( node != null )
+        getBrowserHistory().getNext( new HistoryCallback() );
+    }
+
+    /**
+     * Shows the node found when moving in the browser history.
+     */
+    private class HistoryCallback extends GraphCallback<Node>
+    {
+        @Override
+        public void done( final Node node )
         {
-            showNode( node );
+            if ( node != null )
+            {
+                showNode( node );
+            }
+            updateNavStatus();
         }
-        updateNavStatus();
     }
 
     /**
@@ -589,8 +605,7 @@ public class NeoGraphViewPart extends ViewPart implements IZoomableWorkbenchPart
     public void incTraversalDepth()
     {
         traversalDepth++;
-        refreshViewer();
-        viewer.applyLayout();
+        showTraversalDepth();
         if ( traversalDepth > 0 )
         {
             menu.setEnabledDecAction( true );
@@ -605,8 +620,7 @@ public class NeoGraphViewPart extends ViewPart implements IZoomableWorkbenchPart
         if ( traversalDepth > 0 )
         {
             traversalDepth--;
-            refreshViewer();
-            viewer.applyLayout();
+            showTraversalDepth();
             if ( traversalDepth < 1 )
             {
                 menu.setEnabledDecAction( false );
@@ -614,6 +628,96 @@ public class NeoGraphViewPart extends ViewPart implements IZoomableWorkbenchPart
         }
     }
 
+    /**
+     * Show the current traversal depth. When the shown graph can be reused,
+     * only the levels that were added or removed are loaded and handed to
+     * the viewer, otherwise the view is refreshed.
+     */
+    private void showTraversalDepth()
+    {
+        NeoGraphContentProvider contentProvider = getContentProvider();
+        if ( contentProvider == null || requestedInput != null )
+        {
+            refresh();
+            return;
+        }
+        final NeighbourhoodSnapshot before = contentProvider.getShownSnapshot();
+        if ( before == null || !before.getInput().equals( viewer.getInput() )
+             || !contentProvider.changeDepth( traversalDepth, new Runnable()
+             {
+                 @Override
+                 public void run()
+                 {
+                     showDepthChange( before );
+                 }
+             } ) )
+        {
+            refresh();
+        }
+    }
+
+    /**
+     * Add or remove the levels that differ between the previously shown
+     * snapshot and the current one.
+     * 
+     * @param before the snapshot shown before the depth changed
+     */
+    void showDepthChange( final NeighbourhoodSnapshot before )
+    {
+        NeoGraphContentProvider contentProvider = getContentProvider();
+        if ( contentProvider == null || viewer.getControl().isDisposed() )
+        {
+            return;
+        }
+        disableDelete();
+        NeighbourhoodSnapshot after = contentProvider.getShownSnapshot();
+        for ( int level = before.getDepth(); level > after.getDepth(); level-- )
+        {
+            for ( FanOutPlaceholder placeholder : before.getLevelPlaceholders( level ) )
+            {
+                viewer.removeRelationship( placeholder.getConnection() );
+                viewer.removeNode( placeholder );
+            }
+            for ( Relationship rel : before.getLevelRelationships( level ) )
+            {
+                viewer.removeRelationship( rel );
+            }
+            for ( Node node : before.getLevelNodes( level ) )
+            {
+                viewer.removeNode( node );
+            }
+        }
+        for ( int level = before.getDepth() + 1; level <= after.getDepth(); level++ )
+        {
+            for ( Node node : after.getLevelNodes( level ) )
+            {
+                viewer.addNode( node );
+            }
+            for ( Relationship rel : after.getLevelRelationships( level ) )
+            {
+                viewer.addRelationship( rel, after.getStartNode( rel ),
+                        after.getEndNode( rel ) );
+            }
+            for ( FanOutPlaceholder placeholder : after.getLevelPlaceholders( level ) )
+            {
+                Node node = after.getNode( placeholder.getNodeId() );
+                viewer.addNode( placeholder );
+                if ( placeholder.isOutgoing() )
+                {
+                    viewer.addRelationship( placeholder.getConnection(), node,
+                            placeholder );
+                }
+                else
+                {
+                    viewer.addRelationship( placeholder.getConnection(),
+                            placeholder, node );
+                }
+            }
+        }
+        viewer.applyLayout();
+        refreshStatusBar();
+    }
+
     /**
      * Refreshes the view.
      */
@@ -647,17 +751,61 @@ public class NeoGraphViewPart extends ViewPart implements IZoomableWorkbenchPart
             public void run()
             {
                 disableDelete();
-                viewer.refresh( updateLabels );
-                if ( viewer.getGraphControl().getNodes().size() == 0 )
+                final Node pending = requestedInput;
+                if ( pending != null )
                 {
-                    // will take care of if the input node
-                    // gets deleted or disappears in a rollback
-                    showSomeNode();
+                    // replaces the load of the new input, so show it
+                    getContentProvider().prepareElements( pending, new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            showInput( pending );
+                        }
+                    } );
+                    return;
+                }
+                Object input = viewer.getInput();
+                if ( !( input instanceof Node ) )
+                {
+                    refreshTheViewer( updateLabels );
+                    return;
                 }
+                getContentProvider().prepareElements( (Node) input, new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        refreshTheViewer( updateLabels );
+                    }
+                } );
             }
         } );
     }
 
+    private void refreshTheViewer( final boolean updateLabels )
+    {
+        if ( viewer.getControl().isDisposed() )
+        {
+            return;
+        }
+        if ( updateLabels )
+        {
+            getLabelProvider().startRefresh();
+        }
+        viewer.refresh( updateLabels );
+        if ( updateLabels )
+        {
+            getLabelProvider().releaseImages();
+        }
+        if ( viewer.getGraphControl().getNodes().size() == 0 )
+        {
+            // will take care of if the input node
+            // gets deleted or disappears in a rollback
+            showSomeNode();
+        }
+    }
+
     /**
      * Refresh the graph view.
      * 
@@ -727,29 +875,64 @@ public class NeoGraphViewPart extends ViewPart implements IZoomableWorkbenchPart
      */
     public void setInput( final Node node )
     {
-        UiHelper.asyncExec( new Runnable()
+        NeoGraphContentProvider contentProvider = getContentProvider();
+        if ( node == null || contentProvider == null )
         {
-            @Override
-            public void run()
+            UiHelper.asyncExec( new Runnable()
             {
-                viewer.setInput( node );
-                if ( node != null )
+                @Override
+                public void run()
                 {
-                    UiHelper.asyncExec( new Runnable()
-                    {
-                        @Override
-                        public void run()
-                        {
-                            notifyListeners( node );
-                        }
-                    } );
-                    getBrowserHistory().add( node );
+                    showInput( node );
                 }
-                updateNavStatus();
+            } );
+            return;
+        }
+        // traverse in the background, then show the result
+        requestedInput = node;
+        contentProvider.prepareElements( node, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                showInput( node );
             }
         } );
     }
 
+    private void showInput( final Node node )
+    {
+        requestedInput = null;
+        if ( viewer.getControl().isDisposed() )
+        {
+            return;
+        }
+        viewer.setInput( node );
+        if ( node != null )
+        {
+            UiHelper.asyncExec( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    notifyListeners( node );
+                }
+            } );
+            getBrowserHistory().add( node );
+        }
+        updateNavStatus();
+    }
+
+    /**
+     * Get the content provider of the graph viewer.
+     * 
+     * @return content provider, null if it has been disposed
+     */
+    private NeoGraphContentProvider getContentProvider()
+    {
+        return (NeoGraphContentProvider) viewer.getContentProvider();
+    }
+
     /**
      * Update navigation buttons according to current status. Must be called
      * after all browser history-related operations.
@@ -840,11 +1023,13 @@ public class NeoGraphViewPart extends ViewPart implements IZoomableWorkbenchPart
             }
             else if ( event.getStatus() == GraphDbServiceStatus.ROLLBACK )
             {
+                getLabelProvider().clearCaches();
                 refresh( true );
                 setDirty( false );
             }
             else if ( event.getStatus() == GraphDbServiceStatus.COMMIT )
             {
+                getLabelProvider().clearCaches();
                 setDirty( false );
             }
         }
@@ -876,14 +1061,24 @@ public class NeoGraphViewPart extends ViewPart implements IZoomableWorkbenchPart
     private class NeoGraphDoubleClickListener implements IDoubleClickListener
     {
         /**
-         * Sets the selected node as input for the viewer.
+         * Sets the selected node as input for the viewer, or shows more of
+         * the relationships behind a placeholder.
          */
         @Override
         public void doubleClick( final DoubleClickEvent event )
         {
             StructuredSelection sel = (StructuredSelection) event.getSelection();
             Object s = sel.getFirstElement();
-            if ( ( s != null ) && ( s instanceof Node ) )
+            if ( s instanceof FanOutPlaceholder )
+            {
+                NeoGraphContentProvider contentProvider = getContentProvider();
+                if ( contentProvider != null )
+                {
+                    contentProvider.expandPlaceholder( (FanOutPlaceholder) s );
+                    refresh();
+                }
+            }
+            else if ( ( s != null ) && ( s instanceof Node ) )
             {
                 Node node = (Node) s;
                 if ( viewer != event.getViewer() )
@@ -981,19 +1176,63 @@ public class NeoGraphViewPart extends ViewPart implements IZoomableWorkbenchPart
         @Override
         public void handleStateChanged( final ChangeEvent event )
         {
+            if ( event.getSource() instanceof PropertyContainer )
+            {
+                relabel( (PropertyContainer) event.getSource(), event );
+                return;
+            }
             UiHelper.asyncExec( new Runnable()
             {
                 @Override
                 public void run()
                 {
-                    refresh( event.getSource(), true );
-                    if ( event.getPropertyName() != null )
-                    {
-                        setDirty( true );
-                    }
+                    changed( event );
                 }
             } );
         }
+
+        /**
+         * Read the edited properties again, so the labels aren't rendered
+         * from the old values of the snapshot.
+         */
+        private void relabel( final PropertyContainer container,
+                final ChangeEvent event )
+        {
+            Activator.getDefault().getGraphDbServiceManager().submitReadTask(
+                    new GraphCallable<Map<String, Object>>()
+                    {
+                        @Override
+                        public Map<String, Object> call(
+                                final GraphDatabaseService graphDb )
+                        {
+                            return NeighbourhoodSnapshot.readProperties( container );
+                        }
+                    }, new GraphCallback<Map<String, Object>>()
+                    {
+                        @Override
+                        public void done( final Map<String, Object> props )
+                        {
+                            getLabelProvider().clearLabel( container, props );
+                            changed( event );
+                        }
+
+                        @Override
+                        public void failed( final Exception exception )
+                        {
+                            // the container is gone, a refresh removes it
+                            changed( event );
+                        }
+                    }, TaskPriority.INTERACTIVE, "read edited properties" );
+        }
+
+        private void changed( final ChangeEvent event )
+        {
+            refresh( event.getSource(), true );
+            if ( event.getPropertyName() != null )
+            {
+                setDirty( true );
+            }
+        }
     }
 
     /**